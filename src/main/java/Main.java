@@ -1,9 +1,47 @@
+import managers.Catalog;
+import managers.LibraryManager;
+import managers.ShardedLibraryManager;
+import server.LibraryServer;
+import server.LineProtocolServer;
+import utils.BatchRunner;
+import utils.CatalogExporter;
+import utils.FileHandler;
+import utils.LoanEventLog;
 import utils.MenuSystem;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class Main {
 
+    /**
+     * Starts the console, or without a console the HTTP API ({@code --serve [port]}), the line protocol
+     * ({@code --serve-lines [port]}), a command script ({@code --batch file|- [--quiet]}, see {@link BatchRunner})
+     * or a CSV/JSON Lines export ({@code --export path [--fields a,b] [field=value...]}, see {@link CatalogExporter}).
+     */
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && args[0].equals("--serve")) {
+                serve(args.length > 1 ? Integer.parseInt(args[1]) : LibraryServer.DEFAULT_PORT);
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--serve-lines")) {
+                serveLines(args.length > 1 ? Integer.parseInt(args[1]) : LineProtocolServer.DEFAULT_PORT);
+                return;
+            }
+            if (args.length > 1 && args[0].equals("--batch")) {
+                boolean quiet = args.length > 2 && args[2].equals("--quiet");
+                System.exit(batch(args[1], quiet) == 0 ? 0 : 1);
+            }
+            if (args.length > 1 && args[0].equals("--export")) {
+                System.exit(export(args) ? 0 : 1);
+            }
             MenuSystem menuSystem = new MenuSystem();
             menuSystem.start();
 
@@ -12,4 +50,83 @@ public class Main {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The catalog for the server, batch and export modes: one LibraryManager, or with {@code -Dlibrary.shards=N}
+     * (N above 1) a catalog split into N shards, see {@link ShardedLibraryManager}.
+     */
+    private static Catalog newCatalog() {
+        int shards = Integer.getInteger("library.shards", 1);
+        if (shards <= 1) {
+            return new LibraryManager();
+        }
+        System.out.println("Catalog split into " + shards + " shards");
+        return new ShardedLibraryManager(shards);
+    }
+
+    private static void serve(int port) throws Exception {
+        Catalog libraryManager = newCatalog();
+        FileHandler.loadFromFile(libraryManager);
+        libraryManager.addLoanEventListener(new LoanEventLog());
+
+        LibraryServer server = new LibraryServer(libraryManager, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "library-server-shutdown"));
+        server.start();
+    }
+
+    private static void serveLines(int port) throws Exception {
+        Catalog libraryManager = newCatalog();
+        FileHandler.loadFromFile(libraryManager);
+        libraryManager.addLoanEventListener(new LoanEventLog());
+
+        LineProtocolServer server = new LineProtocolServer(libraryManager, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "line-server-shutdown"));
+        server.start();
+    }
+
+    /**
+     * Runs the script from a file, or from standard input for "-". Returns the number of failed commands.
+     */
+    private static long batch(String script, boolean quiet) throws Exception {
+        Catalog libraryManager = newCatalog();
+        FileHandler.loadFromFile(libraryManager);
+
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+            return new BatchRunner(libraryManager).setQuiet(quiet).run(reader);
+        }
+    }
+
+    /**
+     * Exports all books, or those matching the field=value criteria, in the format the file name asks for.
+     */
+    private static boolean export(String[] args) throws Exception {
+        String path = args[1];
+        String fields = null;
+        Map<String, String> criteria = new LinkedHashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (args[i].equals("--fields") && i + 1 < args.length) {
+                fields = args[++i];
+            } else if (eq > 0) {
+                criteria.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+            } else {
+                System.err.println("Expected --fields a,b or field=value, got " + args[i]);
+                return false;
+            }
+        }
+
+        Catalog libraryManager = newCatalog();
+        FileHandler.loadFromFile(libraryManager);
+        try {
+            CatalogExporter.Result result = CatalogExporter.forPath(path, fields)
+                    .export(libraryManager.streamFilter(criteria), Paths.get(path));
+            System.out.println("Exported " + result + " to " + path);
+            return true;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return false;
+        }
+    }
+}
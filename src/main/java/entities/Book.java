@@ -1,59 +1,85 @@
 package entities;
 
 import entities.enums.Genre;
+import utils.IsbnKey;
+
+import java.util.ArrayList;
 import java.util.Date;
 import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class Book {
+/**
+ * A title with one or more physical copies.
+ * <p>
+ * Each copy is a slot that holds its current {@link Loan} or null while on the shelf. Borrowing first takes
+ * one unit off the available counter with a compare-and-set, which guarantees a free slot, then claims a slot
+ * with another compare-and-set. Concurrent checkouts of the same title therefore never block each other and
+ * can never hand out more copies than exist. The borrower and date getters describe the loan due first,
+ * which for a single copy title is simply its loan.
+ */
+public final class Book {
     private String isbn;
+    private long isbnKey;
     private String title;
     private String author;
     private String publisher;
     private int publicationYear;
     private Genre genre;
-    private boolean isAvailable;
-    private String borrowerName;
-    private Date borrowDate;
-    private Date returnDueDate;
+    private volatile AtomicReferenceArray<Loan> copies = new AtomicReferenceArray<>(1);
+    private final AtomicInteger availableCopies = new AtomicInteger(1);
+    private final AtomicInteger borrowCount = new AtomicInteger();
 
     public Book(String isbn, String title, String author, String publisher,
                 int publicationYear, Genre genre) {
         this.isbn = isbn;
+        this.isbnKey = IsbnKey.of(isbn);
         this.title = title;
         this.author = author;
         this.publisher = publisher;
         this.publicationYear = publicationYear;
         this.genre = genre;
-        this.isAvailable = true;
-        this.borrowerName = null;
-        this.borrowDate = null;
-        this.returnDueDate = null;
     }
 
     public Book(String isbn, String title, String author, String publisher,
                 int publicationYear, Genre genre, boolean isAvailable,
                 String borrowerName, Date borrowDate, Date returnDueDate) {
         this.isbn = isbn;
+        this.isbnKey = IsbnKey.of(isbn);
         this.title = title;
         this.author = author;
         this.publisher = publisher;
         this.publicationYear = publicationYear;
         this.genre = genre;
-        this.isAvailable = isAvailable;
-        this.borrowerName = borrowerName;
-        this.borrowDate = borrowDate;
-        this.returnDueDate = returnDueDate;
+        if (!isAvailable) {
+            restoreLoan(0, borrowerName, borrowDate, returnDueDate);
+        }
     }
 
     public String toFileFormat() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        String borrowDateStr = (borrowDate != null) ? sdf.format(borrowDate) : "null";
-        String returnDueDateStr = (returnDueDate != null) ? sdf.format(returnDueDate) : "null";
-        String borrowerStr = (borrowerName != null) ? borrowerName : "null";
+        Loan primary = getPrimaryLoan();
+        String borrowDateStr = (primary != null && primary.getBorrowDate() != null) ? sdf.format(primary.getBorrowDate()) : "null";
+        String returnDueDateStr = (primary != null && primary.getDueDate() != null) ? sdf.format(primary.getDueDate()) : "null";
+        String borrowerStr = (primary != null && primary.getBorrowerName() != null) ? primary.getBorrowerName().replaceAll("[|;:]", " ") : "null";
 
-        return String.format("%s|%s|%s|%s|%d|%s|%b|%s|%s|%s",
+        // every loan as copy:borrower:borrowDate:dueDate, the legacy columns above only hold the first one
+        StringBuilder loans = new StringBuilder();
+        for (Loan loan : getLoans()) {
+            if (loans.length() > 0) {
+                loans.append(';');
+            }
+            loans.append(loan.getCopyId()).append(':')
+                    .append(loan.getBorrowerName() != null ? loan.getBorrowerName().replaceAll("[|;:]", " ") : "null").append(':')
+                    .append(loan.getBorrowDate() != null ? sdf.format(loan.getBorrowDate()) : "null").append(':')
+                    .append(loan.getDueDate() != null ? sdf.format(loan.getDueDate()) : "null");
+        }
+
+        return String.format("%s|%s|%s|%s|%d|%s|%b|%s|%s|%s|%d|%d|%s",
                 isbn, title, author, publisher, publicationYear,
-                genre.toString(), isAvailable, borrowerStr, borrowDateStr, returnDueDateStr);
+                genre.toString(), isAvailable(), borrowerStr, borrowDateStr, returnDueDateStr, borrowCount.get(),
+                getTotalCopies(), loans);
     }
 
     public static Book fromFileFormat(String line) {
@@ -72,36 +98,171 @@ public class Book {
             Date borrowDate = parts[8].equals("null") ? null : sdf.parse(parts[8]);
             Date returnDueDate = parts.length > 9 && !parts[9].equals("null") ? sdf.parse(parts[9]) : null;
 
-            return new Book(isbn, title, author, publisher, year, genre,
-                    isAvailable, borrowerName, borrowDate, returnDueDate);
+            // files written before borrow counts and copies were kept stop after the due date column
+            if (parts.length <= 11) {
+                Book book = new Book(isbn, title, author, publisher, year, genre,
+                        isAvailable, borrowerName, borrowDate, returnDueDate);
+                book.borrowCount.set(parts.length > 10 ? Integer.parseInt(parts[10]) : 0);
+                return book;
+            }
+
+            Book book = new Book(isbn, title, author, publisher, year, genre);
+            book.borrowCount.set(Integer.parseInt(parts[10]));
+            book.setTotalCopies(Integer.parseInt(parts[11]));
+            if (parts.length > 12) {
+                for (String loan : parts[12].split(";")) {
+                    String[] fields = loan.split(":");
+                    if (fields.length == 4) {
+                        book.restoreLoan(Integer.parseInt(fields[0]),
+                                fields[1].equals("null") ? null : fields[1],
+                                fields[2].equals("null") ? null : sdf.parse(fields[2]),
+                                fields[3].equals("null") ? null : sdf.parse(fields[3]));
+                    }
+                }
+            }
+            return book;
         } catch (Exception e) {
             System.err.println("Error parsing book from file: " + e.getMessage());
             return null;
         }
     }
 
-    public void borrowBook(String borrowerName, Date returnDueDate) {
-        if (!isAvailable) {
-            return;
+    /**
+     * Lends a free copy. Returns the loan, or null if every copy is out.
+     */
+    public Loan borrowBook(String borrowerName, Date returnDueDate) {
+        int available;
+        do {
+            available = availableCopies.get();
+            if (available == 0) {
+                return null;
+            }
+        } while (!availableCopies.compareAndSet(available, available - 1));
+
+        // the counter reserved a copy, so a free slot exists (returns clear the slot before giving the unit back)
+        AtomicReferenceArray<Loan> slots = copies;
+        Date now = new Date();
+        while (true) {
+            for (int copy = 0; copy < slots.length(); copy++) {
+                if (slots.get(copy) == null) {
+                    Loan loan = new Loan(this, copy, borrowerName, now, returnDueDate);
+                    if (slots.compareAndSet(copy, null, loan)) {
+                        borrowCount.incrementAndGet();
+                        return loan;
+                    }
+                }
+            }
+        }
+    }
+
+    public Loan borrowBook(String borrowerName) {
+        return borrowBook(borrowerName, null);
+    }
+
+    /**
+     * Ends the loan of the lowest numbered copy that is out. Returns that loan, or null if no copy is out.
+     */
+    public Loan returnBook() {
+        AtomicReferenceArray<Loan> slots = copies;
+        for (int copy = 0; copy < slots.length(); copy++) {
+            Loan loan = returnCopy(copy);
+            if (loan != null) {
+                return loan;
+            }
         }
-        this.isAvailable = false;
-        this.borrowerName = borrowerName;
-        this.borrowDate = new Date();
-        this.returnDueDate = returnDueDate;
+        return null;
     }
 
-    public void borrowBook(String borrowerName) {
-        borrowBook(borrowerName, null);
+    /**
+     * Ends the loan of one specific copy. Returns that loan, or null if the copy was not out.
+     */
+    public Loan returnCopy(int copyId) {
+        AtomicReferenceArray<Loan> slots = copies;
+        if (copyId < 0 || copyId >= slots.length()) {
+            return null;
+        }
+        Loan loan = slots.get(copyId);
+        if (loan == null || !slots.compareAndSet(copyId, loan, null)) {
+            return null;
+        }
+        availableCopies.incrementAndGet();
+        return loan;
     }
 
+    private void restoreLoan(int copyId, String borrowerName, Date borrowDate, Date dueDate) {
+        if (copies.compareAndSet(copyId, null, new Loan(this, copyId, borrowerName, borrowDate, dueDate))) {
+            availableCopies.decrementAndGet();
+        }
+    }
 
-    public void returnBook() {
-        this.isAvailable = true;
-        this.borrowerName = null;
-        this.borrowDate = null;
-        this.returnDueDate = null;
+    /**
+     * Loans of the copies currently out, by copy id.
+     */
+    public List<Loan> getLoans() {
+        AtomicReferenceArray<Loan> slots = copies;
+        List<Loan> loans = new ArrayList<>();
+        for (int copy = 0; copy < slots.length(); copy++) {
+            Loan loan = slots.get(copy);
+            if (loan != null) {
+                loans.add(loan);
+            }
+        }
+        return loans;
     }
 
+    /**
+     * Current loan of one copy, or null if that copy is on the shelf.
+     */
+    public Loan getLoan(int copyId) {
+        AtomicReferenceArray<Loan> slots = copies;
+        return copyId >= 0 && copyId < slots.length() ? slots.get(copyId) : null;
+    }
+
+    /**
+     * The loan due first (loans without due date last), or null if every copy is on the shelf.
+     */
+    public Loan getPrimaryLoan() {
+        Loan primary = null;
+        for (Loan loan : getLoans()) {
+            if (primary == null || (loan.getDueDate() != null
+                    && (primary.getDueDate() == null || loan.getDueDate().before(primary.getDueDate())))) {
+                primary = loan;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Changes the number of copies. Copies that are out cannot be removed, so the count never drops below
+     * the highest numbered copy on loan. Not safe against concurrent borrows; the catalog owner must
+     * hold its exclusive lock.
+     */
+    public void setTotalCopies(int total) {
+        AtomicReferenceArray<Loan> old = copies;
+        int keep = Math.max(1, total);
+        for (int copy = keep; copy < old.length(); copy++) {
+            if (old.get(copy) != null) {
+                keep = copy + 1;
+            }
+        }
+
+        AtomicReferenceArray<Loan> resized = new AtomicReferenceArray<>(keep);
+        int out = 0;
+        for (int copy = 0; copy < Math.min(keep, old.length()); copy++) {
+            Loan loan = old.get(copy);
+            resized.set(copy, loan);
+            if (loan != null) {
+                out++;
+            }
+        }
+        copies = resized;
+        availableCopies.set(keep - out);
+    }
+
+    public int getTotalCopies() { return copies.length(); }
+
+    public int getAvailableCopies() { return availableCopies.get(); }
+
 
     public String getFieldValue(String fieldName) {
         switch (fieldName.toLowerCase()) {
@@ -113,15 +274,17 @@ public class Book {
             case "year": return String.valueOf(publicationYear);
             case "genre": return genre.toString();
             case "isavailable":
-            case "available": return String.valueOf(isAvailable);
+            case "available": return String.valueOf(isAvailable());
+            case "copies": return String.valueOf(getTotalCopies());
+            case "availablecopies": return String.valueOf(getAvailableCopies());
             case "borrowername":
-            case "borrower": return borrowerName != null ? borrowerName : "";
+            case "borrower": return getBorrowerName() != null ? getBorrowerName() : "";
             case "borrowdate":
                 SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                return borrowDate != null ? sdf.format(borrowDate) : "";
+                return getBorrowDate() != null ? sdf.format(getBorrowDate()) : "";
             case "returnduedate":
                 SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd");
-                return returnDueDate != null ? sdf2.format(returnDueDate) : "";
+                return getReturnDueDate() != null ? sdf2.format(getReturnDueDate()) : "";
             default: return "";
         }
     }
@@ -129,11 +292,16 @@ public class Book {
     @Override
     public String toString() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        String status = isAvailable ? "Available" :
+        Loan primary = getPrimaryLoan();
+        String status = primary == null ? "Available" :
                 String.format("Borrowed by %s on %s (Due: %s)",
-                        borrowerName,
-                        borrowDate != null ? sdf.format(borrowDate) : "N/A",
-                        returnDueDate != null ? sdf.format(returnDueDate) : "N/A");
+                        primary.getBorrowerName(),
+                        primary.getBorrowDate() != null ? sdf.format(primary.getBorrowDate()) : "N/A",
+                        primary.getDueDate() != null ? sdf.format(primary.getDueDate()) : "N/A");
+        if (getTotalCopies() > 1) {
+            status = getAvailableCopies() + " of " + getTotalCopies() + " copies available"
+                    + (primary != null ? ", next due: " + status : "");
+        }
 
         return String.format(
                 "ISBN: %s | Title: %s | Author: %s | Publisher: %s | Year: %d | Genre: %s | Status: %s",
@@ -142,7 +310,15 @@ public class Book {
     }
 
     public String getIsbn() { return isbn; }
-    public void setIsbn(String isbn) { this.isbn = isbn; }
+    public void setIsbn(String isbn) {
+        this.isbn = isbn;
+        this.isbnKey = IsbnKey.of(isbn);
+    }
+
+    /**
+     * Canonical ISBN-13 key used for lookups and duplicate checks, {@link IsbnKey#INVALID} if unparseable.
+     */
+    public long getIsbnKey() { return isbnKey; }
 
     public String getTitle() { return title; }
     public void setTitle(String title) { this.title = title; }
@@ -159,15 +335,43 @@ public class Book {
     public Genre getGenre() { return genre; }
     public void setGenre(Genre genre) { this.genre = genre; }
 
-    public boolean isAvailable() { return isAvailable; }
-    public void setAvailable(boolean available) { isAvailable = available; }
+    /**
+     * True while at least one copy is on the shelf.
+     */
+    public boolean isAvailable() { return availableCopies.get() > 0; }
+
+    /**
+     * Marks every copy as returned, or every copy on the shelf as out without a borrower.
+     */
+    public void setAvailable(boolean available) {
+        AtomicReferenceArray<Loan> slots = copies;
+        for (int copy = 0; copy < slots.length(); copy++) {
+            if (available) {
+                returnCopy(copy);
+            } else {
+                restoreLoan(copy, null, new Date(), null);
+            }
+        }
+    }
+
+    public String getBorrowerName() {
+        Loan primary = getPrimaryLoan();
+        return primary != null ? primary.getBorrowerName() : null;
+    }
 
-    public String getBorrowerName() { return borrowerName; }
-    public void setBorrowerName(String borrowerName) { this.borrowerName = borrowerName; }
+    public Date getBorrowDate() {
+        Loan primary = getPrimaryLoan();
+        return primary != null ? primary.getBorrowDate() : null;
+    }
 
-    public Date getBorrowDate() { return borrowDate; }
-    public void setBorrowDate(Date borrowDate) { this.borrowDate = borrowDate; }
+    public Date getReturnDueDate() {
+        Loan primary = getPrimaryLoan();
+        return primary != null ? primary.getDueDate() : null;
+    }
 
-    public Date getReturnDueDate() { return returnDueDate; }
-    public void setReturnDueDate(Date returnDueDate) { this.returnDueDate = returnDueDate; }
-}
\ No newline at end of file
+    /**
+     * How many times the book has been borrowed, used to rank search suggestions.
+     */
+    public int getBorrowCount() { return borrowCount.get(); }
+    public void setBorrowCount(int borrowCount) { this.borrowCount.set(borrowCount); }
+}
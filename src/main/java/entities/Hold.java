@@ -0,0 +1,61 @@
+package entities;
+
+import entities.enums.HoldStatus;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A patron waiting for a copy of a title.
+ * <p>
+ * A hold leaves {@link HoldStatus#WAITING} exactly once, through a compare-and-set, so a hold that is cancelled
+ * while a returned copy is being handed out is either served or cancelled, never both.
+ */
+public class Hold {
+    private final String isbn;
+    private final long isbnKey;
+    private final String patronName;
+    private final Date placedAt;
+    private final AtomicReference<HoldStatus> status = new AtomicReference<>(HoldStatus.WAITING);
+    private volatile Loan loan;
+
+    public Hold(String isbn, long isbnKey, String patronName, Date placedAt) {
+        this.isbn = isbn;
+        this.isbnKey = isbnKey;
+        this.patronName = patronName;
+        this.placedAt = placedAt;
+    }
+
+    /**
+     * Moves the hold out of the waiting state. Returns false if it already left it.
+     */
+    public boolean complete(HoldStatus outcome) {
+        return status.compareAndSet(HoldStatus.WAITING, outcome);
+    }
+
+    public String getIsbn() { return isbn; }
+
+    public long getIsbnKey() { return isbnKey; }
+
+    public String getPatronName() { return patronName; }
+
+    public Date getPlacedAt() { return placedAt; }
+
+    public HoldStatus getStatus() { return status.get(); }
+
+    public boolean isWaiting() { return status.get() == HoldStatus.WAITING; }
+
+    /**
+     * The loan the hold was fulfilled with, or null while waiting or after cancellation.
+     */
+    public Loan getLoan() { return loan; }
+    public void setLoan(Loan loan) { this.loan = loan; }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        return String.format("%s | Hold for %s placed on %s (%s)",
+                isbn, patronName, sdf.format(placedAt), status.get());
+    }
+}
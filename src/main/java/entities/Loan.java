@@ -0,0 +1,45 @@
+package entities;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One copy of a book lent to one borrower. Loans never change; returning the copy ends the loan.
+ */
+public class Loan {
+    private final Book book;
+    private final int copyId;
+    private final String borrowerName;
+    private final Date borrowDate;
+    private final Date dueDate;
+
+    public Loan(Book book, int copyId, String borrowerName, Date borrowDate, Date dueDate) {
+        this.book = book;
+        this.copyId = copyId;
+        this.borrowerName = borrowerName;
+        this.borrowDate = borrowDate;
+        this.dueDate = dueDate;
+    }
+
+    public Book getBook() { return book; }
+
+    /**
+     * Which copy of the title, from 0 to total copies - 1.
+     */
+    public int getCopyId() { return copyId; }
+
+    public String getBorrowerName() { return borrowerName; }
+
+    public Date getBorrowDate() { return borrowDate; }
+
+    public Date getDueDate() { return dueDate; }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        return String.format("%s (copy %d) | Borrowed by %s on %s (Due: %s)",
+                book.getTitle(), copyId + 1, borrowerName,
+                borrowDate != null ? sdf.format(borrowDate) : "N/A",
+                dueDate != null ? sdf.format(dueDate) : "N/A");
+    }
+}
@@ -0,0 +1,7 @@
+package entities.enums;
+
+public enum HoldStatus {
+    WAITING,
+    FULFILLED,
+    CANCELLED
+}
@@ -0,0 +1,168 @@
+package gui;
+
+import entities.Book;
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The list behind the catalog table. It knows the row of every book, so the rows of updated books are refreshed
+ * in one change event without searching for them, and a batch of removals is a single pass over the rows.
+ * Books are matched by identity, which is how the manager reports them. FX Application Thread only.
+ */
+class CatalogModel extends ModifiableObservableListBase<Book> {
+    private final ArrayList<Book> rows = new ArrayList<>();
+    private final IdentityHashMap<Book, Integer> rowOf = new IdentityHashMap<>();
+    // an insert or remove before the end moved rows; rowOf is rebuilt the next time it is needed
+    private boolean rowsShifted;
+
+    @Override
+    public Book get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Reports the rows of the given books as replaced by themselves, in one change, so the filtered and sorted
+     * views and the table look at them again. Books that are not in the list are skipped.
+     */
+    void refresh(Collection<Book> books) {
+        IdentityHashMap<Book, Integer> index = rowIndex();
+        int[] changed = new int[books.size()];
+        int count = 0;
+        for (Book book : books) {
+            Integer row = index.get(book);
+            if (row != null) {
+                changed[count++] = row;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(changed, 0, count);
+
+        beginChange();
+        try {
+            for (int i = 0; i < count; i++) {
+                nextSet(changed[i], rows.get(changed[i]));
+            }
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Removes every book the collection contains in one pass, keeping the order of the rest.
+     * Pass an identity set to match books the way the manager does.
+     */
+    @Override
+    public boolean removeAll(Collection<?> books) {
+        beginChange();
+        try {
+            int kept = 0;
+            for (int row = 0; row < rows.size(); row++) {
+                Book book = rows.get(row);
+                if (books.contains(book)) {
+                    rowOf.remove(book);
+                    nextRemove(kept, book);
+                } else {
+                    rows.set(kept, book);
+                    if (!rowsShifted) {
+                        rowOf.put(book, kept);
+                    }
+                    kept++;
+                }
+            }
+            boolean removed = kept < rows.size();
+            rows.subList(kept, rows.size()).clear();
+            return removed;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends Book> books) {
+        beginChange();
+        try {
+            List<Book> removed = new ArrayList<>(rows);
+            rows.clear();
+            rows.addAll(books);
+            nextReplace(0, rows.size(), removed);
+            rowOf.clear();
+            rowsShifted = true;
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        beginChange();
+        try {
+            List<Book> range = rows.subList(fromIndex, toIndex);
+            List<Book> removed = new ArrayList<>(range);
+            range.clear();
+            nextRemove(fromIndex, removed);
+            rowOf.clear();
+            rowsShifted = true;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    protected void doAdd(int index, Book book) {
+        if (index != rows.size()) {
+            rowsShifted = true;
+        }
+        rows.add(index, book);
+        if (!rowsShifted) {
+            rowOf.put(book, index);
+        }
+    }
+
+    @Override
+    protected Book doSet(int index, Book book) {
+        Book old = rows.set(index, book);
+        if (!rowsShifted) {
+            rowOf.remove(old);
+            rowOf.put(book, index);
+        }
+        return old;
+    }
+
+    @Override
+    protected Book doRemove(int index) {
+        Book removed = rows.remove(index);
+        if (index == rows.size()) {
+            rowOf.remove(removed);
+        } else {
+            rowsShifted = true;
+        }
+        return removed;
+    }
+
+    private IdentityHashMap<Book, Integer> rowIndex() {
+        if (rowsShifted) {
+            rowOf.clear();
+            for (int row = 0; row < rows.size(); row++) {
+                rowOf.put(rows.get(row), row);
+            }
+            rowsShifted = false;
+        }
+        return rowOf;
+    }
+}
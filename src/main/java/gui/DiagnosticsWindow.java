@@ -0,0 +1,110 @@
+package gui;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+/**
+ * Non-modal window listing the rolling timings of {@link FxInstrumentation}, refreshed every second.
+ */
+class DiagnosticsWindow {
+    private final FxInstrumentation instrumentation;
+    private final TableView<FxInstrumentation.ActionStats> table = new TableView<>();
+    private final Timeline refresher = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh()));
+    private Stage stage;
+
+    DiagnosticsWindow(FxInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        refresher.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    void show() {
+        if (stage == null) {
+            stage = new Stage();
+            stage.setTitle("Diagnostics");
+            stage.setScene(new Scene(createContent(), 760, 420));
+            stage.setOnHidden(e -> refresher.stop());
+        }
+        refresh();
+        refresher.play();
+        stage.show();
+        stage.toFront();
+    }
+
+    private BorderPane createContent() {
+        TableColumn<FxInstrumentation.ActionStats, String> nameCol = new TableColumn<>("Action");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setPrefWidth(200);
+
+        TableColumn<FxInstrumentation.ActionStats, Long> countCol = new TableColumn<>("Count");
+        countCol.setCellValueFactory(new PropertyValueFactory<>("count"));
+        countCol.setPrefWidth(80);
+
+        TableColumn<FxInstrumentation.ActionStats, Long> stallsCol = new TableColumn<>("Stalls");
+        stallsCol.setCellValueFactory(new PropertyValueFactory<>("stalls"));
+        stallsCol.setPrefWidth(70);
+        stallsCol.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(Long item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                    setStyle("");
+                } else {
+                    setText(String.valueOf(item));
+                    setStyle(item > 0 ? "-fx-text-fill: red; -fx-font-weight: bold;" : "");
+                }
+            }
+        });
+
+        table.getColumns().add(nameCol);
+        table.getColumns().add(countCol);
+        table.getColumns().add(stallsCol);
+        table.getColumns().add(millisColumn("p50 (ms)", "p50"));
+        table.getColumns().add(millisColumn("p95 (ms)", "p95"));
+        table.getColumns().add(millisColumn("p99 (ms)", "p99"));
+        table.getColumns().add(millisColumn("Max (ms)", "max"));
+
+        Label thresholdLbl = new Label("Stall threshold: " + instrumentation.getStallThresholdMillis()
+                + " ms (stalls are also printed to the console)");
+        Button logBtn = new Button("Write to Log");
+        logBtn.setOnAction(e -> instrumentation.writeSummaryToLog());
+
+        HBox bottom = new HBox(10, logBtn, thresholdLbl);
+        bottom.setPadding(new Insets(10));
+
+        BorderPane layout = new BorderPane();
+        layout.setCenter(table);
+        layout.setBottom(bottom);
+        return layout;
+    }
+
+    private TableColumn<FxInstrumentation.ActionStats, Double> millisColumn(String title, String property) {
+        TableColumn<FxInstrumentation.ActionStats, Double> column = new TableColumn<>(title);
+        column.setCellValueFactory(new PropertyValueFactory<>(property));
+        column.setPrefWidth(80);
+        column.setCellFactory(c -> new TableCell<>() {
+            @Override
+            protected void updateItem(Double item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : String.format("%.2f", item));
+            }
+        });
+        return column;
+    }
+
+    private void refresh() {
+        table.getItems().setAll(instrumentation.snapshot());
+    }
+}
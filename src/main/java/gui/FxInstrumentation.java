@@ -0,0 +1,276 @@
+package gui;
+
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.scene.Scene;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times UI work on the JavaFX Application Thread.
+ * <p>
+ * Event handlers and handler sections are timed by name, and a heartbeat posted with runLater measures how
+ * long the FX thread takes to respond. Pulses are timed through the scene's pulse listeners, from the start of
+ * the CSS pass through layout to the point where the FX thread is free again after handing the frame to the
+ * renderer; the CSS and layout part is also timed on its own. JavaFX only pulses when something changed, so an
+ * idle window adds no samples. Animations and timers run before the CSS pass and are not part of the pulse
+ * time, but a slow one still shows up in the heartbeat latency. Anything slower than
+ * the stall threshold is logged right away, from a background thread. Rolling percentiles per name are shown
+ * in the diagnostics window and written to {@code data/fx-diagnostics.log} once a minute.
+ * <p>
+ * Time a handler spends waiting in a modal dialog is not work on the FX thread, so modal waits are
+ * wrapped in {@link #awaitUser(Supplier)} and left out of the handler's time.
+ * <p>
+ * The threshold can be changed with {@code -Dlibrary.fx.stallMillis=...} (default 100).
+ */
+public class FxInstrumentation {
+    public static final String FX_LATENCY = "fx.latency";
+    public static final String PULSE = "pulse";
+    public static final String PULSE_LAYOUT = "pulse.layout";
+
+    private static final String LOG_FILE = "data/fx-diagnostics.log";
+    private static final int WINDOW = 1024;
+    private static final long HEARTBEAT_MILLIS = 50;
+
+    private final long stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("library.fx.stallMillis", 100));
+    private final Map<String, RollingStats> stats = new TreeMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fx-instrumentation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // FX thread only: one entry per running timed section, holding the modal wait time to leave out
+    private final ArrayDeque<long[]> activeSections = new ArrayDeque<>();
+    private volatile boolean heartbeatInFlight;
+    private long layoutStart;
+
+    /**
+     * Hooks the scene's pulses and starts the heartbeat and the periodic log.
+     */
+    public void attach(Scene scene) {
+        scene.addPreLayoutPulseListener(() -> layoutStart = System.nanoTime());
+        scene.addPostLayoutPulseListener(() -> {
+            long start = layoutStart;
+            if (start == 0) {
+                return;
+            }
+            layoutStart = 0;
+            record(PULSE_LAYOUT, System.nanoTime() - start);
+            // the rest of the pulse (syncing the scene graph to the renderer) runs before anything posted now
+            Platform.runLater(() -> record(PULSE, System.nanoTime() - start));
+        });
+
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::writeSummaryToLog, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void heartbeat() {
+        // one probe at a time: a stalled thread shows up as one long sample, not a pile of queued ones
+        if (heartbeatInFlight) {
+            return;
+        }
+        heartbeatInFlight = true;
+        long posted = System.nanoTime();
+        Platform.runLater(() -> {
+            heartbeatInFlight = false;
+            record(FX_LATENCY, System.nanoTime() - posted);
+        });
+    }
+
+    /**
+     * Wraps an event handler so every invocation is timed under the given name.
+     */
+    public <T extends Event> EventHandler<T> timed(String action, EventHandler<T> handler) {
+        return event -> time(action, () -> handler.handle(event));
+    }
+
+    public void time(String action, Runnable work) {
+        time(action, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public <T> T time(String action, Supplier<T> work) {
+        long[] waited = new long[1];
+        activeSections.push(waited);
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            activeSections.pop();
+            record(action, elapsed - waited[0]);
+        }
+    }
+
+    /**
+     * Runs a modal wait such as {@code showAndWait()} without charging it to the sections that opened it.
+     */
+    public <T> T awaitUser(Supplier<T> modalWait) {
+        long start = System.nanoTime();
+        try {
+            return modalWait.get();
+        } finally {
+            long waited = System.nanoTime() - start;
+            for (long[] section : activeSections) {
+                section[0] += waited;
+            }
+        }
+    }
+
+    public void record(String action, long nanos) {
+        RollingStats rolling;
+        synchronized (stats) {
+            rolling = stats.computeIfAbsent(action, name -> new RollingStats());
+        }
+        boolean stall = nanos >= stallThresholdNanos;
+        rolling.add(nanos, stall);
+
+        if (stall) {
+            String line = String.format("[FX-STALL] %s %s took %.1f ms", timestamp(), action, nanos / 1e6);
+            System.err.println(line);
+            // a stall is usually reported on the FX thread, which should not wait for the disk on top of it
+            try {
+                scheduler.execute(() -> appendToLog(line));
+            } catch (RejectedExecutionException e) {
+                appendToLog(line);
+            }
+        }
+    }
+
+    /**
+     * Percentiles for every recorded name, in milliseconds.
+     */
+    public List<ActionStats> snapshot() {
+        List<ActionStats> result = new ArrayList<>();
+        synchronized (stats) {
+            for (Map.Entry<String, RollingStats> entry : stats.entrySet()) {
+                result.add(entry.getValue().summarize(entry.getKey()));
+            }
+        }
+        return result;
+    }
+
+    public long getStallThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallThresholdNanos);
+    }
+
+    public void writeSummaryToLog() {
+        List<ActionStats> summary = snapshot();
+        if (summary.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("[FX-SUMMARY] ").append(timestamp()).append('\n');
+        for (ActionStats action : summary) {
+            sb.append("  ").append(action).append('\n');
+        }
+        appendToLog(sb.toString().trim());
+    }
+
+    private synchronized void appendToLog(String text) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(LOG_FILE, true))) {
+            writer.println(text);
+        } catch (IOException e) {
+            System.err.println("Could not write " + LOG_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static String timestamp() {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+    }
+
+    /**
+     * Keeps the last {@link #WINDOW} samples of one action.
+     */
+    private static class RollingStats {
+        private final long[] samples = new long[WINDOW];
+        private int next;
+        private int filled;
+        private long count;
+        private long stalls;
+
+        synchronized void add(long nanos, boolean stall) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            filled = Math.min(filled + 1, WINDOW);
+            count++;
+            if (stall) {
+                stalls++;
+            }
+        }
+
+        synchronized ActionStats summarize(String name) {
+            long[] sorted = Arrays.copyOf(samples, filled);
+            Arrays.sort(sorted);
+            return new ActionStats(name, count, stalls,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    /**
+     * One row of the diagnostics window.
+     */
+    public static class ActionStats {
+        private final String name;
+        private final long count;
+        private final long stalls;
+        private final double p50;
+        private final double p95;
+        private final double p99;
+        private final double max;
+
+        ActionStats(String name, long count, long stalls, double p50, double p95, double p99, double max) {
+            this.name = name;
+            this.count = count;
+            this.stalls = stalls;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getStalls() { return stalls; }
+        public double getP50() { return p50; }
+        public double getP95() { return p95; }
+        public double getP99() { return p99; }
+        public double getMax() { return max; }
+
+        @Override
+        public String toString() {
+            return String.format("%-22s count=%d stalls=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    name, count, stalls, p50, p95, p99, max);
+        }
+    }
+}
@@ -1,19 +1,29 @@
 package gui;
 
 import entities.Book;
+import entities.Hold;
+import entities.Loan;
 import entities.enums.Genre;
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.DatePicker;
@@ -25,45 +35,115 @@ import javafx.scene.control.MenuItem;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Separator;
 import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.util.Pair;
+import managers.CatalogListener;
 import managers.LibraryManager;
+import managers.LoanEventListener;
 import utils.FileHandler;
+import utils.LoanEventLog;
+import utils.QueryCache;
+import utils.TypeaheadIndex;
 
 import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class LibraryGUI extends Application {
+    private static final int SUGGESTION_LIMIT = 8;
+
     private LibraryManager libraryManager;
     private TableView<Book> bookTable;
     private TextField searchBox;
     private ComboBox<String> searchType;
+    private CheckBox fuzzyCheck;
+    private Spinner<Integer> fuzzyDistance;
     private Label statusLbl;
+    private Label reminderLbl;
+
+    /*
+     * The table shows one long-lived model: catalogModel mirrors the catalog through change events,
+     * filteredBooks applies the current search/filter and sortedBooks follows the table's sort order.
+     */
+    private final CatalogModel catalogModel = new CatalogModel();
+    private final FilteredList<Book> filteredBooks = new FilteredList<>(catalogModel);
+    private final SortedList<Book> sortedBooks = new SortedList<>(filteredBooks);
+    private final ConcurrentLinkedQueue<ModelChange> pendingModelChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean modelDrainScheduled = new AtomicBoolean();
+
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gui-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(250));
+    private Task<List<Book>> currentSearch;
+    // the search or filter behind the current view, rerun when what it reads changes; null shows all
+    private ActiveQuery activeQuery;
+    private final ContextMenu suggestionMenu = new ContextMenu();
+    private boolean applyingSuggestion;
+
+    private final FxInstrumentation instrumentation = new FxInstrumentation();
+    private DiagnosticsWindow diagnosticsWindow;
 
     @Override
     public void start(Stage primaryStage) {
-        libraryManager = new LibraryManager();
-        FileHandler.loadFromFile(libraryManager);
+        LibraryManager manager = new LibraryManager();
+        FileHandler.loadFromFile(manager);
 
         primaryStage.setTitle("Library Management System ");
+        primaryStage.setScene(createScene(manager));
+        primaryStage.show();
+
+        manager.addLoanEventListener(new LoanEventLog());
+        manager.addLoanEventListener(new ReminderNotifier());
+    }
+
+    @Override
+    public void stop() {
+        instrumentation.shutdown();
+    }
+
+    /**
+     * Builds the whole UI around the given catalog. Also used by {@link LibraryGUIBenchmark}.
+     */
+    Scene createScene(LibraryManager manager) {
+        libraryManager = manager;
+        libraryManager.addCatalogListener(new CatalogModelSync());
 
         BorderPane mainLayout = new BorderPane();
         mainLayout.setTop(createMenuBar());
@@ -76,11 +156,10 @@ public class LibraryGUI extends Application {
         } catch (Exception e) {
             System.out.println("CSS file not found, using default styling");
         }
-
-        primaryStage.setScene(scene);
-        primaryStage.show();
+        instrumentation.attach(scene);
 
         loadTableData();
+        return scene;
     }
 
     private MenuBar createMenuBar() {
@@ -90,8 +169,8 @@ public class LibraryGUI extends Application {
         MenuItem saveItem = new MenuItem("Save Data");
         MenuItem exitItem = new MenuItem("Exit");
 
-        saveItem.setOnAction(e -> saveData());
-        exitItem.setOnAction(e -> exitApplication());
+        saveItem.setOnAction(instrumentation.timed("save", e -> saveData()));
+        exitItem.setOnAction(instrumentation.timed("exit", e -> exitApplication()));
 
         fileMenu.getItems().addAll(saveItem, new SeparatorMenuItem(), exitItem);
 
@@ -100,37 +179,37 @@ public class LibraryGUI extends Application {
         MenuItem editBookItem = new MenuItem("Edit Selected");
         MenuItem borrowReturnItem = new MenuItem("Borrow/Return Book");
 
-        addBookItem.setOnAction(e -> showAddBookDialog());
-        editBookItem.setOnAction(e -> {
+        addBookItem.setOnAction(instrumentation.timed("add", e -> showAddBookDialog()));
+        editBookItem.setOnAction(instrumentation.timed("edit", e -> {
             Book selectedBook = bookTable.getSelectionModel().getSelectedItem();
             if (selectedBook != null) {
                 showEditBookDialog(selectedBook);
             } else {
                 showAlert();
             }
-        });
-        borrowReturnItem.setOnAction(e -> {
+        }));
+        borrowReturnItem.setOnAction(instrumentation.timed("borrow/return", e -> {
             Book selected = bookTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 showBorrowReturnDialog(selected.getIsbn());
             } else {
                 showBorrowReturnDialog();
             }
-        });
+        }));
 
         bookMenu.getItems().addAll(addBookItem, editBookItem, borrowReturnItem);
 
         Menu viewMenu = new Menu("View");
         MenuItem refreshItem = new MenuItem("Refresh Table");
         MenuItem statsItem = new MenuItem("Show Statistics");
+        MenuItem diagnosticsItem = new MenuItem("Diagnostics");
 
-        refreshItem.setOnAction(e -> {
-            FileHandler.loadFromFile(libraryManager);
-            loadTableData();
-        });
-        statsItem.setOnAction(e -> showStats());
+        refreshItem.setOnAction(instrumentation.timed("refresh", e -> FileHandler.loadFromFile(libraryManager)));
+        statsItem.setOnAction(instrumentation.timed("stats", e -> showStats()));
 
-        viewMenu.getItems().addAll(refreshItem, statsItem);
+        diagnosticsItem.setOnAction(e -> showDiagnostics());
+
+        viewMenu.getItems().addAll(refreshItem, statsItem, new SeparatorMenuItem(), diagnosticsItem);
 
         menuBar.getMenus().addAll(fileMenu, bookMenu, viewMenu);
         return menuBar;
@@ -163,16 +242,48 @@ public class LibraryGUI extends Application {
         searchBox.setPromptText("Type to search");
         searchBox.setPrefWidth(300);
 
+        // search as the user types, but only once typing pauses
+        searchDebounce.setOnFinished(instrumentation.timed("search", e -> doSearch()));
+        searchBox.textProperty().addListener((obs, oldVal, newVal) -> {
+            searchDebounce.playFromStart();
+            if (!applyingSuggestion) {
+                instrumentation.time("typeahead", () -> showSuggestions(newVal));
+            }
+        });
+        searchBox.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) {
+                suggestionMenu.hide();
+            }
+        });
+        searchBox.setOnAction(instrumentation.timed("search", e -> {
+            suggestionMenu.hide();
+            doSearch();
+        }));
+        searchType.setOnAction(instrumentation.timed("search", e -> {
+            suggestionMenu.hide();
+            doSearch();
+        }));
+
+        // typo tolerant matching on title and author, e.g. "Tolkein" finds Tolkien
+        fuzzyCheck = new CheckBox("Fuzzy");
+        fuzzyCheck.setTooltip(new Tooltip("Tolerate typos in title and author searches"));
+        fuzzyDistance = new Spinner<>(1, 3, 2);
+        fuzzyDistance.setPrefWidth(60);
+        fuzzyDistance.setTooltip(new Tooltip("Maximum number of typos per word"));
+        fuzzyDistance.disableProperty().bind(fuzzyCheck.selectedProperty().not());
+        fuzzyCheck.setOnAction(instrumentation.timed("search", e -> doSearch()));
+        fuzzyDistance.valueProperty().addListener((obs, oldVal, newVal) -> doSearch());
+
         Button searchBtn = new Button("Search");
-        searchBtn.setOnAction(e -> doSearch());
+        searchBtn.setOnAction(instrumentation.timed("search", e -> doSearch()));
 
         Button clearBtn = new Button("Clear");
-        clearBtn.setOnAction(e -> {
+        clearBtn.setOnAction(instrumentation.timed("search.clear", e -> {
             searchBox.clear();
-            loadTableData();
-        });
+            doSearch();
+        }));
 
-        searchSection.getChildren().addAll(searchLbl, searchType, searchBox, searchBtn, clearBtn);
+        searchSection.getChildren().addAll(searchLbl, searchType, searchBox, fuzzyCheck, fuzzyDistance, searchBtn, clearBtn);
         return searchSection;
     }
 
@@ -220,6 +331,11 @@ public class LibraryGUI extends Application {
             }
         });
 
+        TableColumn<Book, String> copiesCol = new TableColumn<>("Copies");
+        copiesCol.setCellValueFactory(cell -> new SimpleStringProperty(
+                cell.getValue().getAvailableCopies() + "/" + cell.getValue().getTotalCopies()));
+        copiesCol.setPrefWidth(70);
+
         TableColumn<Book, String> borrowerCol = new TableColumn<>("Borrowed By");
         borrowerCol.setCellValueFactory(new PropertyValueFactory<>("borrowerName"));
         borrowerCol.setPrefWidth(130);
@@ -248,7 +364,10 @@ public class LibraryGUI extends Application {
             }
         });
 
-        table.getColumns().addAll(isbnCol, titleCol, authorCol, publisherCol, yearCol, genreCol, availableCol, borrowerCol, dueDateCol);
+        table.getColumns().addAll(isbnCol, titleCol, authorCol, publisherCol, yearCol, genreCol, availableCol, copiesCol, borrowerCol, dueDateCol);
+
+        sortedBooks.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sortedBooks);
 
         isbnCol.setComparator(String.CASE_INSENSITIVE_ORDER);
         titleCol.setComparator(String.CASE_INSENSITIVE_ORDER);
@@ -276,20 +395,20 @@ public class LibraryGUI extends Application {
         MenuItem deleteItem = new MenuItem("Delete Book");
         MenuItem borrowItem = new MenuItem("Borrow/Return");
 
-        editItem.setOnAction(e -> {
+        editItem.setOnAction(instrumentation.timed("edit", e -> {
             Book selected = table.getSelectionModel().getSelectedItem();
             if (selected != null) showEditBookDialog(selected);
-        });
+        }));
 
-        deleteItem.setOnAction(e -> {
+        deleteItem.setOnAction(instrumentation.timed("delete", e -> {
             Book selected = table.getSelectionModel().getSelectedItem();
             if (selected != null) deleteSelectedBook(selected);
-        });
+        }));
 
-        borrowItem.setOnAction(e -> {
+        borrowItem.setOnAction(instrumentation.timed("borrow/return", e -> {
             Book selected = table.getSelectionModel().getSelectedItem();
             if (selected != null) showBorrowReturnDialog(selected.getIsbn());
-        });
+        }));
 
         rightClickMenu.getItems().addAll(editItem, deleteItem, borrowItem);
 
@@ -298,7 +417,7 @@ public class LibraryGUI extends Application {
             row.setOnMouseClicked(event -> {
                 if (event.getClickCount() == 2 && (!row.isEmpty())) {
                     Book book = row.getItem();
-                    showBorrowReturnDialog(book.getIsbn());
+                    instrumentation.time("borrow/return", () -> showBorrowReturnDialog(book.getIsbn()));
                 }
             });
             return row;
@@ -324,39 +443,39 @@ public class LibraryGUI extends Application {
         Button filterBtn = new Button("Filter");
         Button statsBtn = new Button("Stats");
 
-        addBtn.setOnAction(e -> showAddBookDialog());
-        editBtn.setOnAction(e -> {
+        addBtn.setOnAction(instrumentation.timed("add", e -> showAddBookDialog()));
+        editBtn.setOnAction(instrumentation.timed("edit", e -> {
             Book selected = bookTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 showEditBookDialog(selected);
             } else {
                 showSimpleAlert("Please select a book to edit.");
             }
-        });
+        }));
 
-        deleteBtn.setOnAction(e -> {
+        deleteBtn.setOnAction(instrumentation.timed("delete", e -> {
             Book selected = bookTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 deleteSelectedBook(selected);
             } else {
                 showSimpleAlert("Please select a book to delete.");
             }
-        });
+        }));
 
-        borrowBtn.setOnAction(e -> {
+        borrowBtn.setOnAction(instrumentation.timed("borrow/return", e -> {
             Book selected = bookTable.getSelectionModel().getSelectedItem();
             if (selected != null) {
                 showBorrowReturnDialog(selected.getIsbn());
             } else {
                 showBorrowReturnDialog();
             }
-        });
+        }));
 
-        saveBtn.setOnAction(e -> saveData());
-        exitBtn.setOnAction(e -> exitApplication());
-        sortBtn.setOnAction(e -> showSortOptions());
-        filterBtn.setOnAction(e -> showFilterOptions());
-        statsBtn.setOnAction(e -> showStats());
+        saveBtn.setOnAction(instrumentation.timed("save", e -> saveData()));
+        exitBtn.setOnAction(instrumentation.timed("exit", e -> exitApplication()));
+        sortBtn.setOnAction(instrumentation.timed("sort", e -> showSortOptions()));
+        filterBtn.setOnAction(instrumentation.timed("filter", e -> showFilterOptions()));
+        statsBtn.setOnAction(instrumentation.timed("stats", e -> showStats()));
 
         saveBtn.setStyle("-fx-background-color: lightgreen;");
         exitBtn.setStyle("-fx-background-color: lightcoral;");
@@ -384,7 +503,11 @@ public class LibraryGUI extends Application {
         statusBar.setStyle("-fx-background-color: #f0f0f0;");
 
         statusLbl = new Label("Books: " + libraryManager.getTotalBooks());
-        statusBar.getChildren().add(statusLbl);
+        reminderLbl = new Label();
+        reminderLbl.setStyle("-fx-text-fill: #b00020;");
+        Region spacer = new Region();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+        statusBar.getChildren().addAll(statusLbl, spacer, reminderLbl);
 
         return statusBar;
     }
@@ -407,6 +530,8 @@ public class LibraryGUI extends Application {
         TextField authorInput = new TextField();
         TextField publisherInput = new TextField();
         TextField yearInput = new TextField();
+        Spinner<Integer> copiesInput = new Spinner<>(1, 999, 1);
+        copiesInput.setEditable(true);
         ComboBox<Genre> genreInput = new ComboBox<>();
 
         genreInput.getItems().addAll(Genre.values());
@@ -425,6 +550,8 @@ public class LibraryGUI extends Application {
         form.add(yearInput, 1, 4);
         form.add(new Label("Genre:"), 0, 5);
         form.add(genreInput, 1, 5);
+        form.add(new Label("Copies:"), 0, 6);
+        form.add(copiesInput, 1, 6);
 
         Node addButton = dialog.getDialogPane().lookupButton(addBtn);
         addButton.setDisable(true);
@@ -442,7 +569,9 @@ public class LibraryGUI extends Application {
         dialog.setResultConverter(btn -> {
             if (btn == addBtn) {
                 try {
-                    return new Book(isbnInput.getText().trim(), titleInput.getText().trim(), authorInput.getText().trim(), publisherInput.getText().trim(), Integer.parseInt(yearInput.getText().trim()), genreInput.getValue());
+                    Book book = new Book(isbnInput.getText().trim(), titleInput.getText().trim(), authorInput.getText().trim(), publisherInput.getText().trim(), Integer.parseInt(yearInput.getText().trim()), genreInput.getValue());
+                    book.setTotalCopies(copiesInput.getValue());
+                    return book;
                 } catch (NumberFormatException e) {
                     showSimpleAlert("Please enter a valid year.");
                     return null;
@@ -454,10 +583,9 @@ public class LibraryGUI extends Application {
             return null;
         });
 
-        Optional<Book> result = dialog.showAndWait();
+        Optional<Book> result = instrumentation.awaitUser(dialog::showAndWait);
         result.ifPresent(book -> {
             if (libraryManager.createBook(book)) {
-                loadTableData();
                 showSimpleAlert("Book added successfully!");
             } else {
                 showSimpleAlert("Failed to add book. ISBN might already exist.");
@@ -484,6 +612,9 @@ public class LibraryGUI extends Application {
         TextField authorInput = new TextField(book.getAuthor());
         TextField publisherInput = new TextField(book.getPublisher());
         TextField yearInput = new TextField(String.valueOf(book.getPublicationYear()));
+        // copies that are out cannot be removed, the manager keeps the count at least that high
+        Spinner<Integer> copiesInput = new Spinner<>(1, 999, book.getTotalCopies());
+        copiesInput.setEditable(true);
 
         ComboBox<Genre> genreInput = new ComboBox<>();
         genreInput.getItems().addAll(Genre.values());
@@ -501,6 +632,8 @@ public class LibraryGUI extends Application {
         form.add(yearInput, 1, 4);
         form.add(new Label("Genre:"), 0, 5);
         form.add(genreInput, 1, 5);
+        form.add(new Label("Copies:"), 0, 6);
+        form.add(copiesInput, 1, 6);
 
         dialog.getDialogPane().setContent(form);
 
@@ -513,6 +646,7 @@ public class LibraryGUI extends Application {
                     updates.put("publisher", publisherInput.getText());
                     updates.put("year", yearInput.getText());
                     updates.put("genre", genreInput.getValue().toString());
+                    updates.put("copies", String.valueOf(copiesInput.getValue()));
 
                     libraryManager.updateBook(book.getIsbn(), updates);
                     return book;
@@ -524,11 +658,8 @@ public class LibraryGUI extends Application {
             return null;
         });
 
-        Optional<Book> result = dialog.showAndWait();
-        result.ifPresent(updatedBook -> {
-            loadTableData();
-            showSimpleAlert("Book updated!");
-        });
+        Optional<Book> result = instrumentation.awaitUser(dialog::showAndWait);
+        result.ifPresent(updatedBook -> showSimpleAlert("Book updated!"));
     }
 
     private void deleteSelectedBook(Book book) {
@@ -537,10 +668,9 @@ public class LibraryGUI extends Application {
         confirm.setHeaderText("Are you sure?");
         confirm.setContentText("Delete: " + book.getTitle() + "?");
 
-        Optional<ButtonType> choice = confirm.showAndWait();
+        Optional<ButtonType> choice = instrumentation.awaitUser(confirm::showAndWait);
         if (choice.isPresent() && choice.get() == ButtonType.OK) {
             if (libraryManager.deleteBook(book.getIsbn())) {
-                loadTableData();
                 showSimpleAlert("Book deleted!");
             } else {
                 showSimpleAlert("Failed to delete book.");
@@ -583,13 +713,18 @@ public class LibraryGUI extends Application {
             return null;
         });
 
-        Optional<Pair<String, Boolean>> result = dialog.showAndWait();
+        Optional<Pair<String, Boolean>> result = instrumentation.awaitUser(dialog::showAndWait);
         result.ifPresent(choice -> {
-            String field = choice.getKey().toLowerCase();
             boolean asc = choice.getValue();
 
-            libraryManager.sortBooks(field, asc);
-            loadTableData();
+            // sorting is a view over the model: drive the table's own sort order
+            for (TableColumn<Book, ?> column : bookTable.getColumns()) {
+                if (column.getText().equals(choice.getKey())) {
+                    column.setSortType(asc ? TableColumn.SortType.ASCENDING : TableColumn.SortType.DESCENDING);
+                    bookTable.getSortOrder().setAll(List.of(column));
+                    break;
+                }
+            }
 
             String orderText = asc ? "ascending" : "descending";
             showSimpleAlert("Books sorted by " + choice.getKey() + " (" + orderText + ")");
@@ -638,16 +773,16 @@ public class LibraryGUI extends Application {
             return null;
         });
 
-        Optional<Map<String, String>> result = dialog.showAndWait();
+        Optional<Map<String, String>> result = instrumentation.awaitUser(dialog::showAndWait);
         result.ifPresent(filters -> {
             if (filters.isEmpty()) {
-                loadTableData();
+                showAll();
                 showSimpleAlert("Showing all books");
             } else {
-                List<Book> filtered = libraryManager.filterBooks(filters);
-                bookTable.setItems(FXCollections.observableArrayList(filtered));
-                updateStatus();
-                showSimpleAlert("Found " + filtered.size() + " books");
+                // filtering a large catalog takes a while, so it runs like a search, off the FX thread
+                statusLbl.setText("Filtering...");
+                runQuery(new ActiveQuery(filters.keySet(), () -> libraryManager.filterBooks(filters)),
+                        filtered -> showSimpleAlert("Found " + filtered.size() + " books"));
             }
         });
     }
@@ -699,7 +834,7 @@ public class LibraryGUI extends Application {
             return null;
         });
 
-        Optional<Pair<String, Pair<String, Date>>> result = dialog.showAndWait();
+        Optional<Pair<String, Pair<String, Date>>> result = instrumentation.awaitUser(dialog::showAndWait);
         result.ifPresent(data -> {
             String bookIsbn = data.getKey();
 
@@ -715,11 +850,12 @@ public class LibraryGUI extends Application {
             }
 
             if (data.getValue() == null) {
-                if (!book.isAvailable()) {
-                    book.returnBook();
+                LibraryManager.Returned returned = libraryManager.returnCopy(bookIsbn, -1);
+                if (returned != null) {
                     FileHandler.saveToFile(libraryManager);
-                    loadTableData();
-                    showSimpleAlert("Book returned!");
+                    Loan next = returned.getHeldFor();
+                    showSimpleAlert(next == null ? "Book returned!"
+                            : "Book returned! The copy goes to " + next.getBorrowerName() + ", who had it on hold.");
                 } else {
                     showSimpleAlert("Book is not borrowed");
                 }
@@ -733,35 +869,95 @@ public class LibraryGUI extends Application {
                     return;
                 }
 
-                if (book.isAvailable()) {
-                    book.borrowBook(borrower, due);
+                if (libraryManager.borrowBook(bookIsbn, borrower, due)) {
                     FileHandler.saveToFile(libraryManager);
-                    loadTableData();
                     SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd");
                     showSimpleAlert("Borrowed by " + borrower + "\nDue: " + fmt.format(due));
                 } else {
-                    showSimpleAlert("Already borrowed by: " + book.getBorrowerName());
+                    offerHold(book, borrower);
                 }
             }
         });
     }
 
+    private void offerHold(Book book, String patron) {
+        Alert ask = new Alert(Alert.AlertType.CONFIRMATION);
+        ask.setTitle("No Copy Available");
+        ask.setHeaderText("No copy of \"" + book.getTitle() + "\" is available.");
+        ask.setContentText("Patrons waiting: " + libraryManager.getHoldCount(book.getIsbn())
+                + "\nPlace a hold for " + patron + "?");
+
+        Optional<ButtonType> choice = instrumentation.awaitUser(ask::showAndWait);
+        if (choice.isEmpty() || choice.get() != ButtonType.OK) {
+            return;
+        }
+
+        Hold hold = libraryManager.placeHold(book.getIsbn(), patron);
+        if (hold == null) {
+            showSimpleAlert(patron + " is already waiting for this book.");
+        } else if (hold.getLoan() != null) {
+            FileHandler.saveToFile(libraryManager);
+            showSimpleAlert("A copy was free and has been lent to " + patron + ".");
+        } else {
+            showSimpleAlert("Hold placed. Position in line: " + libraryManager.getHoldPosition(hold));
+        }
+    }
+
     private void showBorrowReturnDialog() {
         showBorrowReturnDialog(null);
     }
 
 
+    /**
+     * Statistics are computed off the FX thread and cached per catalog version. If the catalog changed
+     * since the last computation, the previous values are shown until the new ones arrive.
+     */
     private void showStats() {
-        Map<String, Object> stats = libraryManager.getAdvancedLibraryStats(libraryManager);
+        Alert statsDialog = createStatsDialog();
+        instrumentation.awaitUser(statsDialog::showAndWait);
+    }
 
+    /**
+     * Builds the statistics dialog without showing it. The header reads "Current Statistics" once the
+     * values for the current catalog are in.
+     */
+    Alert createStatsDialog() {
         Alert statsDialog = new Alert(Alert.AlertType.INFORMATION);
         statsDialog.setTitle("Library Stats");
-        statsDialog.setHeaderText("Current Statistics");
 
+        CompletableFuture<Map<String, Object>> future = libraryManager.getAdvancedLibraryStatsAsync();
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            statsDialog.setHeaderText("Current Statistics");
+            statsDialog.setContentText(buildStatsReport(future.join()));
+        } else {
+            Map<String, Object> previous = libraryManager.getCachedStats();
+            statsDialog.setHeaderText("Recomputing statistics...");
+            statsDialog.setContentText(previous != null
+                    ? "(Previous values, the catalog has changed since)\n\n" + buildStatsReport(previous)
+                    : "Computing statistics...");
+
+            future.whenComplete((stats, error) -> Platform.runLater(() -> instrumentation.time("stats.publish", () -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    statsDialog.setHeaderText("Statistics failed");
+                    statsDialog.setContentText(String.valueOf(cause.getMessage()));
+                } else {
+                    statsDialog.setHeaderText("Current Statistics");
+                    statsDialog.setContentText(buildStatsReport(stats));
+                }
+            })));
+        }
+        return statsDialog;
+    }
+
+    String buildStatsReport(Map<String, Object> stats) {
         StringBuilder content = new StringBuilder();
         content.append("Total Books: ").append(stats.get("totalBooks")).append("\n");
         content.append("Available: ").append(stats.get("availableBooks")).append("\n");
-        content.append("Borrowed: ").append(stats.get("borrowedBooks")).append("\n\n");
+        content.append("Borrowed: ").append(stats.get("borrowedBooks")).append("\n");
+        content.append("Copies on Loan: ").append(stats.get("copiesOnLoan")).append(" of ").append(stats.get("totalCopies")).append("\n");
+        content.append("Loans (last 30 days): ").append(stats.get("loansLast30Days")).append("\n");
+        content.append(String.format("Average Loan: %.1f days%n%n", (Double) stats.getOrDefault("averageLoanDays", 0.0)));
 
         Map<Genre, Long> genres = (Map<Genre, Long>) stats.get("genreDistribution");
         if (genres != null && !genres.isEmpty()) {
@@ -790,59 +986,350 @@ public class LibraryGUI extends Application {
             content.append("\nOverdue Books: ").append(overdueBooks.size()).append("\n");
         }
 
-        statsDialog.setContentText(content.toString());
-        statsDialog.showAndWait();
+        Map<String, Object> cache = libraryManager.getQueryCacheStats();
+        content.append(String.format("%nSearch Cache: %s results, %.0f%% hits, %s evicted, %s invalidated%n",
+                cache.get("entries"), (Double) cache.get("hitRate") * 100, cache.get("evictions"), cache.get("invalidations")));
+
+        return content.toString();
     }
 
 
+    /**
+     * Shows completions for the current search field under the search box, most borrowed first.
+     * The prefix index answers in microseconds, so this runs directly on the FX thread.
+     */
+    private void showSuggestions(String text) {
+        String criteria = searchType.getValue();
+        String attribute = criteria.equals("All Fields") ? "all" : criteria.toLowerCase();
+        List<TypeaheadIndex.Suggestion> suggestions = text.trim().isEmpty()
+                ? List.of()
+                : libraryManager.suggest(attribute, text, SUGGESTION_LIMIT);
+
+        if (suggestions.isEmpty()) {
+            suggestionMenu.hide();
+            return;
+        }
+
+        List<MenuItem> items = new ArrayList<>();
+        for (TypeaheadIndex.Suggestion suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion.getText());
+            item.setMnemonicParsing(false);
+            item.setOnAction(e -> applySuggestion(suggestion.getText()));
+            items.add(item);
+        }
+        suggestionMenu.getItems().setAll(items);
+        if (!suggestionMenu.isShowing()) {
+            suggestionMenu.show(searchBox, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void applySuggestion(String text) {
+        applyingSuggestion = true;
+        try {
+            searchBox.setText(text);
+            searchBox.positionCaret(text.length());
+        } finally {
+            applyingSuggestion = false;
+        }
+        suggestionMenu.hide();
+        instrumentation.time("search", this::doSearch);
+    }
+
+    /**
+     * Runs the search on a background thread. A newer search cancels the one still running,
+     * and only the latest result is published to the table, in a single update on the FX thread.
+     */
     private void doSearch() {
+        searchDebounce.stop();
+        cancelSearch();
+
         String criteria = searchType.getValue();
-        String term = searchBox.getText().trim().toLowerCase();
+        String term = searchBox.getText().trim();
 
         if (term.isEmpty()) {
-            loadTableData();
+            showAll();
             return;
         }
 
-        ObservableList<Book> results = FXCollections.observableArrayList();
+        String attribute = criteria.equals("All Fields") ? "all" : criteria.toLowerCase();
+        boolean fuzzy = fuzzyCheck.isSelected();
+        int maxDistance = fuzzyDistance.getValue();
+        statusLbl.setText("Searching...");
+        runQuery(new ActiveQuery(List.of(attribute), () -> fuzzy
+                ? libraryManager.fuzzySearch(attribute, term, maxDistance)
+                : libraryManager.searchBooks(attribute, term)), null);
+    }
+
+    /**
+     * Makes the query the active one and runs it on the search thread; the result narrows the table and is
+     * then handed to {@code published}, if given. A newer query cancels this one and nothing is published.
+     */
+    private void runQuery(ActiveQuery query, Consumer<List<Book>> published) {
+        cancelSearch();
+        activeQuery = query;
+        // taken before the query runs, so a change racing with it makes the result count as stale
+        query.stamp = libraryManager.stampFields(query.fields);
+        Task<List<Book>> search = new Task<>() {
+            @Override
+            protected List<Book> call() {
+                return query.run.get();
+            }
+        };
+
+        search.setOnSucceeded(e -> {
+            if (search == currentSearch) {
+                currentSearch = null;
+                instrumentation.time("search.publish", () -> showOnly(search.getValue()));
+                if (published != null) {
+                    published.accept(search.getValue());
+                }
+            }
+        });
+        search.setOnFailed(e -> {
+            if (search == currentSearch) {
+                currentSearch = null;
+                statusLbl.setText("Search failed: " + search.getException().getMessage());
+            }
+        });
+
+        currentSearch = search;
+        searchExecutor.execute(search);
+    }
+
+    private void cancelSearch() {
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+            currentSearch = null;
+        }
+    }
+
+    /**
+     * Reload the model with all books
+     */
+    private void loadTableData() {
+        catalogModel.setAll(libraryManager.getBooks());
+        updateStatus();
+    }
+
+    /**
+     * Narrows the table to the given books without copying the model. The books must be the result of
+     * {@link #activeQuery}, which is rerun whenever the catalog changes so the view does not go stale.
+     */
+    private void showOnly(Collection<Book> books) {
+        Set<Book> visible = Collections.newSetFromMap(new IdentityHashMap<>(books.size()));
+        visible.addAll(books);
+        filteredBooks.setPredicate(visible::contains);
+        updateStatus();
+    }
 
-        for (Book book : libraryManager.getBooks()) {
-            boolean matches;
+    private void showAll() {
+        cancelSearch();
+        activeQuery = null;
+        filteredBooks.setPredicate(null);
+        updateStatus();
+    }
 
-            if (criteria.equals("All Fields")) {
-                matches = book.getIsbn().toLowerCase().contains(term) || book.getTitle().toLowerCase().contains(term) || book.getAuthor().toLowerCase().contains(term) || book.getPublisher().toLowerCase().contains(term) || book.getGenre().toString().toLowerCase().contains(term) || String.valueOf(book.getPublicationYear()).contains(term);
+    /**
+     * Queues a model change and makes sure one FX-thread pass applies everything queued so far,
+     * so a batch of catalog changes turns into one UI update.
+     */
+    private void enqueueModelChange(ModelChange change) {
+        pendingModelChanges.add(change);
+        if (modelDrainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drainModelChanges);
+        }
+    }
+
+    /**
+     * Folds everything queued into at most one removeAll (one pass over the model), one refresh of the updated
+     * rows (found through the model's row index, not by scanning) and one addAll. Books are matched by identity,
+     * which is how the manager reports them. The active query is rerun only if a field it reads changed.
+     */
+    private void drainModelChanges() {
+        instrumentation.time("model.update", () -> {
+            modelDrainScheduled.set(false);
+            boolean reloaded = false;
+            List<Book> added = new ArrayList<>();
+            Set<Book> stillAdded = identitySet();
+            Set<Book> removed = identitySet();
+            Set<Book> updated = identitySet();
+
+            ModelChange change;
+            while ((change = pendingModelChanges.poll()) != null) {
+                if (reloaded) {
+                    // the reload below reads the catalog after every queued change
+                    continue;
+                }
+                switch (change.kind) {
+                    case ADDED:
+                        added.addAll(change.books);
+                        stillAdded.addAll(change.books);
+                        break;
+                    case REMOVED:
+                        for (Book book : change.books) {
+                            if (!stillAdded.remove(book)) {
+                                removed.add(book);
+                            }
+                        }
+                        break;
+                    case UPDATED:
+                        updated.addAll(change.books);
+                        break;
+                    case RELOADED:
+                        reloaded = true;
+                        break;
+                }
+            }
+
+            if (reloaded) {
+                catalogModel.setAll(libraryManager.getBooks());
             } else {
-                matches = switch (criteria) {
-                    case "ISBN" -> book.getIsbn().toLowerCase().contains(term);
-                    case "Title" -> book.getTitle().toLowerCase().contains(term);
-                    case "Author" -> book.getAuthor().toLowerCase().contains(term);
-                    case "Publisher" -> book.getPublisher().toLowerCase().contains(term);
-                    case "Genre" -> book.getGenre().toString().toLowerCase().contains(term);
-                    case "Year" -> String.valueOf(book.getPublicationYear()).contains(term);
-                    default -> false;
-                };
+                if (!removed.isEmpty()) {
+                    catalogModel.removeAll(removed);
+                }
+                if (!updated.isEmpty()) {
+                    catalogModel.refresh(updated);
+                }
+                if (!stillAdded.isEmpty()) {
+                    List<Book> inserts = new ArrayList<>(stillAdded.size());
+                    for (Book book : added) {
+                        if (stillAdded.remove(book)) {
+                            inserts.add(book);
+                        }
+                    }
+                    catalogModel.addAll(inserts);
+                }
             }
 
-            if (matches) {
-                results.add(book);
+            if (activeQuery != null && activeQuery.stamp != null && !libraryManager.isCurrent(activeQuery.stamp)) {
+                runQuery(activeQuery, null);
             }
+            updateStatus();
+        });
+    }
+
+    private static Set<Book> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * A search or filter the table is narrowed to, with the fields it reads.
+     */
+    private static class ActiveQuery {
+        final Collection<String> fields;
+        final Supplier<List<Book>> run;
+        // versions of the fields when the query last ran
+        QueryCache.Stamp stamp;
+
+        ActiveQuery(Collection<String> fields, Supplier<List<Book>> run) {
+            this.fields = fields;
+            this.run = run;
         }
+    }
 
-        bookTable.setItems(results);
-        updateStatus();
+    /**
+     * One catalog event waiting for the FX thread.
+     */
+    private static class ModelChange {
+        enum Kind { ADDED, REMOVED, UPDATED, RELOADED }
+
+        final Kind kind;
+        final List<Book> books;
+
+        ModelChange(Kind kind, List<Book> books) {
+            this.kind = kind;
+            this.books = books;
+        }
     }
 
     /**
-     * Reload table with all books
+     * Turns catalog events into queued model changes; single-book and bulk events are queued alike.
      */
-    private void loadTableData() {
-        ObservableList<Book> allBooks = FXCollections.observableArrayList(libraryManager.getBooks());
-        bookTable.setItems(allBooks);
-        updateStatus();
+    private class CatalogModelSync implements CatalogListener {
+        @Override
+        public void bookAdded(Book book) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.ADDED, List.of(book)));
+        }
+
+        @Override
+        public void bookRemoved(Book book) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.REMOVED, List.of(book)));
+        }
+
+        @Override
+        public void bookUpdated(Book book) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.UPDATED, List.of(book)));
+        }
+
+        @Override
+        public void booksAdded(List<Book> books) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.ADDED, new ArrayList<>(books)));
+        }
+
+        @Override
+        public void booksRemoved(List<Book> books) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.REMOVED, new ArrayList<>(books)));
+        }
+
+        @Override
+        public void booksUpdated(List<Book> books) {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.UPDATED, new ArrayList<>(books)));
+        }
+
+        @Override
+        public void catalogReloaded() {
+            enqueueModelChange(new ModelChange(ModelChange.Kind.RELOADED, List.of()));
+        }
+    }
+
+    /**
+     * Shows the latest reminders in the status bar and refreshes the overdue count. Reminders arrive at most
+     * once per tick, so a plain runLater per batch is enough.
+     */
+    private class ReminderNotifier implements LoanEventListener {
+        @Override
+        public void loansDueSoon(List<Loan> loans) {
+            show(loans.size() + (loans.size() == 1 ? " loan is" : " loans are") + " due soon", loans);
+        }
+
+        @Override
+        public void loansBecameOverdue(List<Loan> loans) {
+            show(loans.size() + (loans.size() == 1 ? " loan" : " loans") + " became overdue", loans);
+        }
+
+        private void show(String message, List<Loan> loans) {
+            String first = loans.get(0).toString();
+            Platform.runLater(() -> {
+                SimpleDateFormat time = new SimpleDateFormat("HH:mm");
+                reminderLbl.setText(time.format(new Date()) + "  " + message);
+                reminderLbl.setTooltip(new Tooltip(first + (loans.size() > 1 ? "\n..." : "")));
+                updateStatus();
+            });
+        }
+    }
+
+    /*
+     * Hooks for LibraryGUIBenchmark, which drives the UI without a user.
+     */
+
+    TableView<Book> getBookTable() {
+        return bookTable;
+    }
+
+    /**
+     * Replaces the search box text as if the user typed it, which goes through the debounce.
+     */
+    void typeSearchText(String text) {
+        searchBox.setText(text);
+    }
+
+    boolean isSearchPending() {
+        return currentSearch != null || searchDebounce.getStatus() == Animation.Status.RUNNING;
     }
 
     private void updateStatus() {
-        statusLbl.setText("Books: " + bookTable.getItems().size());
+        // cheap now that overdue books are read from the due date index
+        statusLbl.setText("Books: " + bookTable.getItems().size() + "   Overdue: " + libraryManager.countOverdue());
     }
 
     private void showSimpleAlert(String message) {
@@ -850,7 +1337,7 @@ public class LibraryGUI extends Application {
         alert.setTitle("Info");
         alert.setHeaderText(null);
         alert.setContentText(message);
-        alert.showAndWait();
+        instrumentation.awaitUser(alert::showAndWait);
     }
 
     private void showAlert() {
@@ -858,7 +1345,7 @@ public class LibraryGUI extends Application {
         alert.setTitle("No Selection");
         alert.setHeaderText(null);
         alert.setContentText("Please select a book first.");
-        alert.showAndWait();
+        instrumentation.awaitUser(alert::showAndWait);
     }
 
     private void saveData() {
@@ -869,6 +1356,13 @@ public class LibraryGUI extends Application {
         }
     }
 
+    private void showDiagnostics() {
+        if (diagnosticsWindow == null) {
+            diagnosticsWindow = new DiagnosticsWindow(instrumentation);
+        }
+        diagnosticsWindow.show();
+    }
+
     private void exitApplication() {
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Exit");
@@ -881,12 +1375,14 @@ public class LibraryGUI extends Application {
 
         confirm.getButtonTypes().setAll(saveExit, justExit, cancel);
 
-        Optional<ButtonType> choice = confirm.showAndWait();
+        Optional<ButtonType> choice = instrumentation.awaitUser(confirm::showAndWait);
         if (choice.isPresent()) {
             if (choice.get() == saveExit) {
                 saveData();
+                instrumentation.writeSummaryToLog();
                 System.exit(0);
             } else if (choice.get() == justExit) {
+                instrumentation.writeSummaryToLog();
                 System.exit(0);
             }
         }
@@ -0,0 +1,391 @@
+package gui;
+
+import entities.Book;
+import entities.enums.Genre;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.TableColumn;
+import javafx.stage.Stage;
+import managers.LibraryManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Headless scalability benchmark for {@link LibraryGUI}.
+ * <p>
+ * Loads synthetic catalogs, drives the UI programmatically (initial render, column sort,
+ * search keystrokes, statistics dialog) and records for each action the time spent in the handler,
+ * the time until the result is on screen, FX Application Thread stalls and pulse durations.
+ * <p>
+ * Run headless through Monocle with {@code mvn -Pgui-bench compile exec:exec}.
+ * Catalog sizes can be passed as the first argument, e.g. {@code 10000,100000}.
+ */
+public class LibraryGUIBenchmark {
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+    private static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final String[] WORDS = {
+            "the", "dark", "tower", "river", "night", "garden", "winter", "secret", "house", "king",
+            "shadow", "glass", "city", "storm", "silent", "road", "fire", "ocean", "last", "golden"
+    };
+    private static final String[] SURNAMES = {
+            "Tolkien", "Austen", "Herbert", "Rowling", "Martin", "Brown", "Adams", "Larsson", "Harari", "Fitzgerald"
+    };
+
+    private final StallMonitor stalls = new StallMonitor();
+    private final PulseMonitor pulses = new PulseMonitor();
+    private LibraryGUI gui;
+    private Stage stage;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? parseSizes(args[0]) : DEFAULT_SIZES;
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.setImplicitExit(false);
+        Platform.startup(started::countDown);
+        started.await();
+
+        int status = 0;
+        try {
+            System.out.printf("%-28s %10s %12s %12s %12s %12s %8s %12s %12s%n",
+                    "action", "rows", "handler ms", "visible ms", "max stall", "p99 stall", "pulses", "max pulse", "max layout");
+            for (int size : sizes) {
+                new LibraryGUIBenchmark().run(size);
+            }
+        } catch (Exception e) {
+            System.err.println("Benchmark failed: " + e);
+            status = 1;
+        } finally {
+            Platform.exit();
+        }
+        System.exit(status);
+    }
+
+    private static int[] parseSizes(String arg) {
+        String[] parts = arg.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim().replace("_", ""));
+        }
+        return sizes;
+    }
+
+    private void run(int size) throws Exception {
+        LibraryManager manager = createCatalog(size);
+        Thread stallThread = new Thread(stalls, "fx-stall-probe");
+        stallThread.setDaemon(true);
+        stallThread.start();
+
+        try {
+            measure("initial render", size, () -> {
+                gui = new LibraryGUI();
+                Scene scene = gui.createScene(manager);
+                pulses.attach(scene);
+                stage = new Stage();
+                stage.setScene(scene);
+                stage.show();
+            }, () -> true);
+
+            measure("sort Title asc", size, () -> sortBy("Title", TableColumn.SortType.ASCENDING), () -> true);
+            measure("sort Year desc", size, () -> sortBy("Year", TableColumn.SortType.DESCENDING), () -> true);
+
+            measureTyping("search keystrokes 'the da'", size, "the da");
+            measureTyping("clear search", size, "");
+
+            measureStatsDialog("statistics dialog", size);
+            measureStatsDialog("statistics dialog (cached)", size);
+        } finally {
+            stalls.stop();
+            fx(() -> {
+                if (stage != null) {
+                    stage.close();
+                }
+                pulses.detach();
+                return null;
+            });
+        }
+    }
+
+    private void sortBy(String columnName, TableColumn.SortType sortType) {
+        for (TableColumn<Book, ?> column : gui.getBookTable().getColumns()) {
+            if (column.getText().equals(columnName)) {
+                column.setSortType(sortType);
+                gui.getBookTable().getSortOrder().setAll(List.of(column));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens the statistics dialog the way the Stats button does, minus the modal wait, and waits until it
+     * shows the values for the current catalog. The dialog is closed again afterwards.
+     */
+    private void measureStatsDialog(String name, int size) throws Exception {
+        List<Alert> dialog = new ArrayList<>();
+        measure(name, size, () -> {
+            dialog.add(gui.createStatsDialog());
+            dialog.getFirst().show();
+        }, () -> dialog.getFirst().isShowing() && "Current Statistics".equals(dialog.getFirst().getHeaderText()));
+        fx(() -> {
+            dialog.getFirst().setResult(ButtonType.OK);
+            dialog.getFirst().close();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action on the FX thread, then waits for layout pulses until {@code done} is true.
+     */
+    private void measure(String name, int size, Runnable action, BooleanSupplier done) throws Exception {
+        fx(() -> {
+            stalls.reset();
+            pulses.reset();
+            return null;
+        });
+
+        long start = System.nanoTime();
+        long handlerNanos = fx(() -> {
+            long t = System.nanoTime();
+            action.run();
+            return System.nanoTime() - t;
+        });
+        awaitVisible(start, done);
+        report(name, size, handlerNanos, System.nanoTime() - start);
+    }
+
+    /**
+     * Types the text one character at a time, 40 ms apart, and waits for the debounced search to land.
+     */
+    private void measureTyping(String name, int size, String text) throws Exception {
+        fx(() -> {
+            stalls.reset();
+            pulses.reset();
+            return null;
+        });
+
+        long maxHandlerNanos = 0;
+        long start = System.nanoTime();
+        List<String> keystrokes = new ArrayList<>();
+        for (int i = 1; i <= text.length(); i++) {
+            keystrokes.add(text.substring(0, i));
+        }
+        if (keystrokes.isEmpty()) {
+            keystrokes.add("");
+        }
+
+        for (String typed : keystrokes) {
+            start = System.nanoTime();
+            long handlerNanos = fx(() -> {
+                long t = System.nanoTime();
+                gui.typeSearchText(typed);
+                return System.nanoTime() - t;
+            });
+            maxHandlerNanos = Math.max(maxHandlerNanos, handlerNanos);
+            Thread.sleep(40);
+        }
+
+        awaitVisible(start, () -> !gui.isSearchPending());
+        report(name, size, maxHandlerNanos, System.nanoTime() - start);
+    }
+
+    private void awaitVisible(long start, BooleanSupplier done) throws Exception {
+        while (true) {
+            pulses.awaitNextLayoutPulse();
+            if (fx(done::getAsBoolean)) {
+                return;
+            }
+            if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                throw new IllegalStateException("UI did not settle within timeout");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private void report(String name, int size, long handlerNanos, long visibleNanos) throws Exception {
+        List<Long> stallSamples = stalls.snapshot();
+        List<Long> pulseIntervals = fx(pulses::intervals);
+        List<Long> layoutTimes = fx(pulses::layoutTimes);
+
+        System.out.printf("%-28s %,10d %12.1f %12.1f %12.1f %12.1f %8d %12.1f %12.1f%n",
+                name, size, millis(handlerNanos), millis(visibleNanos),
+                millis(max(stallSamples)), millis(percentile(stallSamples, 0.99)),
+                pulseIntervals.size(), millis(max(pulseIntervals)), millis(max(layoutTimes)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static long max(List<Long> samples) {
+        return samples.isEmpty() ? 0 : Collections.max(samples);
+    }
+
+    private static long percentile(List<Long> samples, double p) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1));
+    }
+
+    private static <T> T fx(Callable<T> task) throws Exception {
+        if (Platform.isFxApplicationThread()) {
+            return task.call();
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        Platform.runLater(future);
+        return future.get(5, TimeUnit.MINUTES);
+    }
+
+    private static LibraryManager createCatalog(int size) {
+        Random random = new Random(42);
+        Genre[] genres = Genre.values();
+        ArrayList<Book> books = new ArrayList<>(size);
+        Date now = new Date();
+
+        for (int i = 0; i < size; i++) {
+            String isbn = String.format("978%010d", i);
+            String title = WORDS[random.nextInt(WORDS.length)] + "_" + WORDS[random.nextInt(WORDS.length)] + "_" + i;
+            String author = SURNAMES[random.nextInt(SURNAMES.length)] + "_" + (char) ('A' + random.nextInt(26));
+            String publisher = "Publisher_" + random.nextInt(500);
+            int year = 1900 + random.nextInt(125);
+            Book book = new Book(isbn, title, author, publisher, year, genres[random.nextInt(genres.length)]);
+            if (random.nextInt(10) == 0) {
+                book.borrowBook("Reader_" + random.nextInt(5000),
+                        new Date(now.getTime() + (random.nextInt(60) - 30) * 86_400_000L));
+            }
+            books.add(book);
+        }
+
+        LibraryManager manager = new LibraryManager();
+        manager.setBooks(books);
+        return manager;
+    }
+
+    /**
+     * Measures how long the FX Application Thread takes to pick up a probe posted with runLater.
+     * A long delay means the thread was busy (stalled) for that long.
+     */
+    private static class StallMonitor implements Runnable {
+        private final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+        private final Semaphore inFlight = new Semaphore(1);
+        private volatile boolean running = true;
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long posted = System.nanoTime();
+                Platform.runLater(() -> {
+                    delays.add(System.nanoTime() - posted);
+                    inFlight.release();
+                });
+                LockSupport.parkNanos(2_000_000);
+            }
+        }
+
+        void reset() {
+            delays.clear();
+        }
+
+        List<Long> snapshot() {
+            synchronized (delays) {
+                return new ArrayList<>(delays);
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+
+    /**
+     * Records pulse intervals (frame to frame) and the layout part of each pulse.
+     * All methods run on the FX Application Thread.
+     */
+    private static class PulseMonitor {
+        private final List<Long> intervals = new ArrayList<>();
+        private final List<Long> layoutTimes = new ArrayList<>();
+        private volatile CountDownLatch nextLayoutPulse = new CountDownLatch(1);
+        private long lastFrame;
+        private long layoutStart;
+        private Scene scene;
+
+        private final AnimationTimer timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (lastFrame != 0) {
+                    intervals.add(now - lastFrame);
+                }
+                lastFrame = now;
+            }
+        };
+        private final Runnable preLayout = () -> layoutStart = System.nanoTime();
+        private final Runnable postLayout = () -> {
+            layoutTimes.add(System.nanoTime() - layoutStart);
+            nextLayoutPulse.countDown();
+        };
+
+        void attach(Scene scene) {
+            this.scene = scene;
+            scene.addPreLayoutPulseListener(preLayout);
+            scene.addPostLayoutPulseListener(postLayout);
+            timer.start();
+        }
+
+        void detach() {
+            timer.stop();
+            if (scene != null) {
+                scene.removePreLayoutPulseListener(preLayout);
+                scene.removePostLayoutPulseListener(postLayout);
+            }
+        }
+
+        void reset() {
+            intervals.clear();
+            layoutTimes.clear();
+            lastFrame = 0;
+        }
+
+        List<Long> intervals() {
+            return new ArrayList<>(intervals);
+        }
+
+        List<Long> layoutTimes() {
+            return new ArrayList<>(layoutTimes);
+        }
+
+        /**
+         * Blocks the calling (non FX) thread until the next layout pulse has completed.
+         */
+        void awaitNextLayoutPulse() throws Exception {
+            CountDownLatch latch = new CountDownLatch(1);
+            fx(() -> {
+                nextLayoutPulse = latch;
+                Platform.requestNextPulse();
+                return null;
+            });
+            if (!latch.await(5, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("No pulse within timeout");
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package managers;
+
+import entities.Book;
+import entities.Loan;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The catalog operations used by the servers, batch scripts, exports and the data file, so these work on a
+ * single {@link LibraryManager} as well as on a {@link ShardedLibraryManager}.
+ * See LibraryManager for what each operation does.
+ */
+public interface Catalog {
+
+    boolean createBook(Book book);
+
+    Book getBookByIsbn(String isbn);
+
+    boolean updateBook(String isbn, Map<String, String> updates);
+
+    boolean deleteBook(String isbn);
+
+    int updateBooksIf(Predicate<Book> predicate, Map<String, String> updates);
+
+    int deleteBooksIf(Predicate<Book> predicate);
+
+    Loan borrowCopy(String isbn, String borrowerName, Date returnDueDate);
+
+    LibraryManager.Returned returnCopy(String isbn, int copyId);
+
+    int getHoldCount(String isbn);
+
+    List<Book> searchBooks(String attribute, String searchValue);
+
+    Stream<Book> streamSearch(String attribute, String searchValue);
+
+    List<Book> fuzzySearch(String attribute, String query, int maxDistance);
+
+    List<Book> filterBooks(Map<String, String> criteria);
+
+    Stream<Book> streamFilter(Map<String, String> criteria);
+
+    /**
+     * Snapshot of all books.
+     */
+    ArrayList<Book> getBooks();
+
+    /**
+     * Replaces the whole catalog, e.g. when loading the data file.
+     */
+    void setBooks(ArrayList<Book> books);
+
+    int getTotalBooks();
+
+    /**
+     * Changes whenever the catalog changes, so callers can tell whether there is anything new to save.
+     */
+    long getVersion();
+
+    void addLoanEventListener(LoanEventListener listener);
+
+    CompletableFuture<Map<String, Object>> getAdvancedLibraryStatsAsync();
+
+    Map<String, Object> getQueryCacheStats();
+}
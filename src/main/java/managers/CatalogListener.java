@@ -0,0 +1,54 @@
+package managers;
+
+import entities.Book;
+
+import java.util.List;
+
+/**
+ * Receives change notifications from a {@link LibraryManager}.
+ * Callbacks run on the thread that changed the catalog while the catalog is still locked,
+ * so implementations must be quick and must not call back into the manager to modify it.
+ */
+public interface CatalogListener {
+
+    void bookAdded(Book book);
+
+    void bookRemoved(Book book);
+
+    /**
+     * A field of the book changed (edit, borrow or return). The book object stays the same.
+     */
+    void bookUpdated(Book book);
+
+    /**
+     * Several books were added by one batch operation. By default reported one by one.
+     */
+    default void booksAdded(List<Book> books) {
+        for (Book book : books) {
+            bookAdded(book);
+        }
+    }
+
+    /**
+     * Several books were removed by one batch operation. By default reported one by one.
+     */
+    default void booksRemoved(List<Book> books) {
+        for (Book book : books) {
+            bookRemoved(book);
+        }
+    }
+
+    /**
+     * Several books changed in one batch operation. By default reported one by one.
+     */
+    default void booksUpdated(List<Book> books) {
+        for (Book book : books) {
+            bookUpdated(book);
+        }
+    }
+
+    /**
+     * The whole catalog was replaced, e.g. reloaded from file.
+     */
+    void catalogReloaded();
+}
@@ -2,30 +2,167 @@ package managers;
 
 
 import entities.Book;
+import entities.Hold;
+import entities.Loan;
 import entities.enums.Genre;
+import utils.BorrowerIndex;
+import utils.DueDateIndex;
+import utils.FuzzyIndex;
+import utils.HoldQueues;
+import utils.IsbnKey;
+import utils.LoanHistory;
+import utils.LongKeyMap;
+import utils.QueryCache;
+import utils.SlotMap;
+import utils.TypeaheadIndex;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class LibraryManager {
-    private ArrayList<Book> books;
+/**
+ * Owns the catalog.
+ * <p>
+ * Books live in a {@link SlotMap}: a delete tombstones one slot in O(1) and the slot is reused by the next insert.
+ * The ISBN index maps ISBN keys to row ids, which stay stable until a compaction renumbers the storage.
+ * Compaction runs in the background once enough of the storage is tombstones.
+ * Titles, authors and publishers are also kept in prefix indexes ranked by borrow count, for search suggestions,
+ * and title and author words in typo tolerant indexes for fuzzy search. Borrowed books are ordered by due date
+ * so overdue queries only read the overdue part, and filed by borrower with a running top borrowers ranking.
+ * All access goes through a read/write lock, so the manager can be shared between threads.
+ * <p>
+ * A title can have several copies and the catalog counts titles. Checkouts only take the lock in shared mode:
+ * the copy is claimed with compare-and-set on the book and the loan indexes are concurrent, so checkouts of the
+ * same popular title do not queue behind each other. The borrow count bump for suggestions needs the exclusive
+ * lock and is applied shortly after, in the background.
+ * <p>
+ * Patrons can queue for a title with a hold. Holds are served first come, first served: a returned copy goes
+ * straight to the next patron in line, and walk-in borrows are refused while anyone is waiting.
+ * Every borrow and return is also appended to a {@link LoanHistory} for circulation reports, and once a
+ * {@link LoanEventListener} is registered, loans get due soon and overdue reminders from a timing wheel.
+ * <p>
+ * Search and filter results are kept in a {@link QueryCache}. Every change bumps the version of the fields it
+ * touched, so checkouts and returns only invalidate queries that look at availability or loans.
+ * The stream variants ({@link #streamSearch(String, String)}, {@link #streamFilter(Map)}) are lazy instead and
+ * stop scanning as soon as the caller has what it needs.
+ */
+public class LibraryManager implements Catalog {
+    private static final double COMPACTION_THRESHOLD = 0.25;
+    private static final int COMPACTION_MIN_TOMBSTONES = 1024;
+    private static final String[] SEARCHABLE_FIELDS = {"isbn", "title", "author", "publisher", "genre", "year"};
+    private static final String[] SUGGESTION_FIELDS = {"title", "author", "publisher"};
+    private static final String[] FUZZY_FIELDS = {"title", "author"};
+    private static final int HOLD_LOAN_DAYS = 14;
+    private static final int QUERY_CACHE_ENTRIES = Integer.getInteger("library.queryCache.entries", 256);
+    private static final long QUERY_CACHE_BOOKS = Long.getLong("library.queryCache.books", 1_000_000);
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final ExecutorService STATS_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final AtomicBoolean scoresScheduled = new AtomicBoolean();
+    private final Queue<Book> pendingScores = new ConcurrentLinkedQueue<>();
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile CachedStats cachedStats;
+    private CompletableFuture<Map<String, Object>> pendingStats;
+    private long pendingStatsVersion = -1;
+    private SlotMap<Book> books;
+    private LongKeyMap<Integer> isbnIndex;
+    private Map<String, TypeaheadIndex> suggestionIndexes;
+    private Map<String, FuzzyIndex<Book>> fuzzyIndexes;
+    private DueDateIndex dueDates = new DueDateIndex();
+    private BorrowerIndex borrowers = new BorrowerIndex();
+    private final HoldQueues holds = new HoldQueues();
+    private final LoanHistory history = new LoanHistory();
+    private final LoanReminderScheduler reminders = new LoanReminderScheduler();
+    private final QueryCache<List<Book>> queryCache =
+            new QueryCache<>(QUERY_CACHE_ENTRIES, QUERY_CACHE_BOOKS, List::size);
 
     public LibraryManager() {
-        this.books = new ArrayList<>();
+        this.books = new SlotMap<>();
+        this.isbnIndex = new LongKeyMap<>();
+        this.suggestionIndexes = buildSuggestionIndexes(Collections.emptyList());
+        this.fuzzyIndexes = buildFuzzyIndexes(Collections.emptyList());
     }
 
+    /**
+     * Adds a book unless its ISBN cannot be normalized or another book already has the same ISBN key
+     * (ISBN-10 and ISBN-13 forms of the same book count as duplicates).
+     */
     public boolean createBook(Book book) {
+        long key = book.getIsbnKey();
+        if (key == IsbnKey.INVALID) {
+            return false;
+        }
 
-        for (Book b : books) {
-            if (b.getIsbn().equals(book.getIsbn())) {
+        lock.writeLock().lock();
+        try {
+            if (isbnIndex.containsKey(key)) {
                 return false;
             }
+            isbnIndex.put(key, books.add(book));
+            indexText(book);
+            fireBookAdded(book);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds many books under one lock, with the same rules as {@link #createBook(Book)}; earlier books in the
+     * list win over later ones with the same ISBN key. Listeners get a single booksAdded event. Returns, per
+     * book, whether it was added.
+     */
+    public boolean[] createBooks(List<Book> newBooks) {
+        boolean[] created = new boolean[newBooks.size()];
+        List<Book> added = new ArrayList<>(newBooks.size());
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < created.length; i++) {
+                Book book = newBooks.get(i);
+                long key = book.getIsbnKey();
+                if (key == IsbnKey.INVALID || isbnIndex.containsKey(key)) {
+                    continue;
+                }
+                isbnIndex.put(key, books.add(book));
+                indexText(book);
+                added.add(book);
+                created[i] = true;
+            }
+            fireBooksAdded(added);
+        } finally {
+            lock.writeLock().unlock();
         }
-        books.add(book);
-        return true;
+        return created;
     }
 
     public void listAllBooks() {
+        List<Book> books = getBooks();
         System.out.println("\n=== LIBRARY CATALOG ===");
         System.out.println("Total Books: " + books.size());
         System.out.println("=" + "=".repeat(100));
@@ -41,32 +178,102 @@ public class LibraryManager {
         System.out.println("=" + "=".repeat(100));
     }
 
+    /**
+     * Case-insensitive substring search on one attribute, or on every searchable field when the
+     * attribute is "all". The scan stops early if the calling thread is interrupted, so a superseded
+     * background search can be cancelled; the partial result should then be discarded.
+     * Results are cached until one of the searched fields changes.
+     */
     public List<Book> searchBooks(String attribute, String searchValue) {
-        List<Book> results = new ArrayList<>();
         String searchLower = searchValue.toLowerCase();
+        boolean allFields = attribute.equalsIgnoreCase("all");
+        String key = "search" + KEY_SEPARATOR + attribute.toLowerCase() + KEY_SEPARATOR + searchLower;
+        List<Book> cached = queryCache.get(key);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        QueryCache.Stamp stamp = queryCache.stamp(allFields ? Arrays.asList(SEARCHABLE_FIELDS) : List.of(attribute));
 
-        for (Book book : books) {
-            String fieldValue = book.getFieldValue(attribute).toLowerCase();
-            if (fieldValue.contains(searchLower)) {
-                results.add(book);
+        List<Book> results = new ArrayList<>();
+        Predicate<Book> matcher = searchMatcher(attribute, searchLower);
+        Thread current = Thread.currentThread();
+
+        lock.readLock().lock();
+        try {
+            int limit = books.getRowLimit();
+            for (int row = 0; row < limit; row++) {
+                if ((row & 1023) == 0 && current.isInterrupted()) {
+                    break;
+                }
+                Book book = books.get(row);
+                if (book == null) {
+                    continue;
+                }
+                if (matcher.test(book)) {
+                    results.add(book);
+                }
             }
+        } finally {
+            lock.readLock().unlock();
         }
 
+        if (!current.isInterrupted()) {
+            queryCache.put(key, stamp, new ArrayList<>(results));
+        }
         return results;
     }
 
+    /**
+     * Lazy version of {@link #searchBooks(String, String)}: books are matched as the stream is consumed, so
+     * {@code findFirst}, {@code anyMatch} or {@code limit} stop the scan early. Not cached, see {@link #streamBooks()}.
+     */
+    public Stream<Book> streamSearch(String attribute, String searchValue) {
+        return streamBooks().filter(searchMatcher(attribute, searchValue.toLowerCase()));
+    }
+
+    private static Predicate<Book> searchMatcher(String attribute, String searchLower) {
+        if (attribute.equalsIgnoreCase("all")) {
+            return book -> matchesAnyField(book, searchLower);
+        }
+        return book -> book.getFieldValue(attribute).toLowerCase().contains(searchLower);
+    }
+
+    private static boolean matchesAnyField(Book book, String searchLower) {
+        for (String field : SEARCHABLE_FIELDS) {
+            if (book.getFieldValue(field).toLowerCase().contains(searchLower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Book searchFirstBook(String attribute, String searchValue) {
-        List<Book> results = searchBooks(attribute, searchValue);
-        return results.isEmpty() ? null : results.getFirst();
+        return streamSearch(attribute, searchValue).findFirst().orElse(null);
     }
 
 
     public boolean updateBook(String isbn, Map<String, String> updates) {
-        Book book = searchFirstBook("isbn", isbn);
-        if (book == null) {
-            return false;
+        lock.writeLock().lock();
+        try {
+            Book book = getBookByIsbn(isbn);
+            if (book == null) {
+                return false;
+            }
+
+            applyUpdates(book, updates);
+            updatesApplied(updates);
+            fireBookUpdated(book);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
+    private void applyUpdates(Book book, Map<String, String> updates) {
+        applyPendingScores();
+        String[] before = suggestionValues(book);
+        List<Loan> loansBefore = book.getLoans();
+        unindexLoans(book);
         for (Map.Entry<String, String> entry : updates.entrySet()) {
             String field = entry.getKey().toLowerCase();
             String value = entry.getValue();
@@ -93,125 +300,860 @@ public class LibraryManager {
                     case "isavailable":
                         book.setAvailable(Boolean.parseBoolean(value));
                         break;
+                    case "copies":
+                    case "totalcopies":
+                        book.setTotalCopies(Integer.parseInt(value));
+                        break;
                 }
             } catch (Exception e) {
                 System.err.println("Error updating field " + field + ": " + e.getMessage());
             }
         }
 
-        return true;
+        // "available" can be edited directly, which ends or starts loans as far as the loan indexes are concerned
+        indexLoans(book);
+        recordLoanChanges(loansBefore, book.getLoans());
+        // more copies or copies marked returned may be waited for
+        fulfilHolds(book);
+
+        String[] after = suggestionValues(book);
+        for (int i = 0; i < SUGGESTION_FIELDS.length; i++) {
+            suggestionIndexes.get(SUGGESTION_FIELDS[i]).replace(before[i], after[i], book.getBorrowCount());
+            FuzzyIndex<Book> fuzzy = fuzzyIndexes.get(SUGGESTION_FIELDS[i]);
+            if (fuzzy != null) {
+                fuzzy.replace(before[i], after[i], book);
+            }
+        }
+    }
+
+    /**
+     * Marks the updated fields as changed for the result cache, once per update call or batch.
+     * Edits of "available" or "copies" can also have served holds, which counts as circulation.
+     */
+    private void updatesApplied(Map<String, String> updates) {
+        for (String field : updates.keySet()) {
+            queryCache.fieldChanged(field);
+        }
+        queryCache.circulationChanged();
     }
 
     public boolean deleteBook(String isbn) {
-        Book book = searchFirstBook("isbn", isbn);
+        lock.writeLock().lock();
+        try {
+            Integer row = isbnIndex.remove(IsbnKey.of(isbn));
+            if (row == null) {
+                return false;
+            }
+            Book removed = books.remove(row);
+            unindexBook(removed);
+            fireBookRemoved(removed);
+            scheduleCompactionIfFragmented();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called with the write lock held.
+     */
+    private void scheduleCompactionIfFragmented() {
+        if (books.getTombstones() >= COMPACTION_MIN_TOMBSTONES
+                && books.getFragmentation() > COMPACTION_THRESHOLD
+                && compactionScheduled.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                compactionScheduled.set(false);
+                compact();
+            });
+        }
+    }
+
+    /**
+     * Packs the storage and renumbers row ids. Normally triggered automatically after deletes.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (books.getTombstones() > 0) {
+                books.compact();
+                rebuildIndex();
+                queryCache.catalogChanged();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildIndex() {
+        LongKeyMap<Integer> index = new LongKeyMap<>(books.size());
+        books.forEach((book, row) -> index.put(book.getIsbnKey(), row));
+        isbnIndex = index;
+    }
+
+    /*
+     * Batch operations. Each one makes a single pass over the catalog (or over the given ISBNs) under one
+     * exclusive lock, then bumps the catalog version and the result cache once and sends listeners one bulk
+     * event, so callers should persist once afterwards instead of once per book.
+     */
+
+    /**
+     * Deletes every book whose ISBN is in the given collection. Returns the number of books deleted.
+     */
+    public int deleteBooks(Collection<String> isbns) {
+        lock.writeLock().lock();
+        try {
+            List<Book> deleted = new ArrayList<>();
+            for (String isbn : isbns) {
+                Integer row = isbnIndex.remove(IsbnKey.of(isbn));
+                if (row != null) {
+                    Book removed = books.remove(row);
+                    unindexBook(removed);
+                    deleted.add(removed);
+                }
+            }
+            fireBooksRemoved(deleted);
+            scheduleCompactionIfFragmented();
+            return deleted.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every book matching the predicate. Returns the number of books deleted.
+     */
+    public int deleteBooksIf(Predicate<Book> predicate) {
+        lock.writeLock().lock();
+        try {
+            List<Book> deleted = new ArrayList<>();
+            books.forEach((book, row) -> {
+                if (predicate.test(book)) {
+                    isbnIndex.remove(book.getIsbnKey());
+                    books.remove(row);
+                    unindexBook(book);
+                    deleted.add(book);
+                }
+            });
+            fireBooksRemoved(deleted);
+            scheduleCompactionIfFragmented();
+            return deleted.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the same field updates (see {@link #updateBook(String, Map)}) to every book matching the predicate.
+     * Returns the number of books updated.
+     */
+    public int updateBooksIf(Predicate<Book> predicate, Map<String, String> updates) {
+        List<Book> updated = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            books.forEach((book, row) -> {
+                if (predicate.test(book)) {
+                    applyUpdates(book, updates);
+                    updated.add(book);
+                }
+            });
+            if (!updated.isEmpty()) {
+                updatesApplied(updates);
+                fireBooksUpdated(updated);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return updated.size();
+    }
+
+    /**
+     * Borrows a copy of the book if it exists and a copy is available.
+     */
+    public boolean borrowBook(String isbn, String borrowerName, Date returnDueDate) {
+        return borrowCopy(isbn, borrowerName, returnDueDate) != null;
+    }
+
+    /**
+     * Lends a free copy of the book and returns the loan, or null if the book does not exist, every copy is out
+     * or patrons are waiting for it (see {@link #placeHold(String, String)}).
+     * Runs under the shared lock; concurrent borrowers of the same title race on the book's availability counter
+     * instead of on the catalog lock.
+     */
+    public Loan borrowCopy(String isbn, String borrowerName, Date returnDueDate) {
+        lock.readLock().lock();
+        try {
+            Loan loan = lend(isbn, borrowerName, returnDueDate);
+            if (loan == null) {
+                return null;
+            }
+            queryCache.circulationChanged();
+            fireBookUpdated(loan.getBook());
+            return loan;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Claims and records a copy without notifying anyone; the caller bumps the cache and fires the event.
+     * Needs at least the shared lock.
+     */
+    private Loan lend(String isbn, String borrowerName, Date returnDueDate) {
+        Book book = getBookByIsbn(isbn);
+        if (book == null || holds.hasWaiting(book.getIsbnKey())) {
+            return null;
+        }
+        Loan loan = book.borrowBook(borrowerName, returnDueDate);
+        if (loan != null) {
+            recordLoan(book, loan);
+        }
+        return loan;
+    }
+
+    /**
+     * Indexes a new loan and queues its suggestion score bump. Needs at least the shared lock.
+     * The caller marks circulation as changed for the result cache.
+     */
+    private void recordLoan(Book book, Loan loan) {
+        indexLoan(loan);
+        history.recordBorrow(loan, loan.getBorrowDate().getTime());
+        reminders.loanStarted(loan);
+        pendingScores.add(book);
+        scheduleScoreUpdate();
+    }
+
+    /**
+     * Returns the lowest numbered copy of the book that is out, if any.
+     */
+    public boolean returnBook(String isbn) {
+        return returnCopy(isbn, -1) != null;
+    }
+
+    /**
+     * Returns one copy of the book, or with a negative copy id the lowest numbered copy that is out.
+     * Returns the loan that ended and the hold it served, or null if that copy was not out.
+     * Takes the exclusive lock so a return never overtakes the indexing of the borrow it ends.
+     */
+    public Returned returnCopy(String isbn, int copyId) {
+        lock.writeLock().lock();
+        try {
+            Returned returned = takeBack(isbn, copyId);
+            if (returned == null) {
+                return null;
+            }
+            queryCache.circulationChanged();
+            fireBookUpdated(returned.getLoan().getBook());
+            return returned;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ends the loan and hands the copy to the next hold, without notifying anyone; the caller bumps the cache
+     * and fires the event. Must be called with the write lock held.
+     */
+    private Returned takeBack(String isbn, int copyId) {
+        Book book = getBookByIsbn(isbn);
         if (book == null) {
-            return false;
+            return null;
+        }
+        Loan loan = copyId < 0 ? book.returnBook() : book.returnCopy(copyId);
+        if (loan == null) {
+            return null;
         }
-        books.remove(book);
-        return true;
+        unindexLoan(loan);
+        history.recordReturn(loan, System.currentTimeMillis());
+        reminders.loanEnded(loan);
+        fulfilHolds(book);
+        // still under the write lock, so only a hold can have taken the copy since
+        return new Returned(loan, book.getLoan(loan.getCopyId()));
     }
 
-    public void sortBooks(String attribute, boolean ascending) {
-        Comparator<Book> comparator = null;
+    /**
+     * Outcome of a return: the loan that ended and, if the copy went straight to the next patron in line,
+     * their new loan.
+     */
+    public static class Returned {
+        private final Loan loan;
+        private final Loan heldFor;
+
+        Returned(Loan loan, Loan heldFor) {
+            this.loan = loan;
+            this.heldFor = heldFor;
+        }
+
+        public Loan getLoan() { return loan; }
+
+        /**
+         * The loan of the patron whose hold the returned copy served, or null if nobody was waiting.
+         */
+        public Loan getHeldFor() { return heldFor; }
+    }
+
+    /**
+     * Puts the patron in line for the book. Returns the hold, or null if the book does not exist or the patron
+     * already waits for it. If a copy is free the hold is served right away, see {@link Hold#getLoan()}.
+     * Placing a hold only takes the shared lock and appends to a lock-free queue.
+     */
+    public Hold placeHold(String isbn, String patronName) {
+        Book book;
+        Hold hold;
+        lock.readLock().lock();
+        try {
+            book = getBookByIsbn(isbn);
+            if (book == null || patronName == null || patronName.isBlank()) {
+                return null;
+            }
+            hold = holds.place(book.getIsbn(), book.getIsbnKey(), patronName);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // a return that happened before the hold was queued could not see it, so serve it now
+        if (hold != null && book.isAvailable()) {
+            lock.writeLock().lock();
+            try {
+                if (getBookByIsbnKey(book.getIsbnKey()) == book && fulfilHolds(book) > 0) {
+                    queryCache.circulationChanged();
+                    fireBookUpdated(book);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return hold;
+    }
+
+    /**
+     * Takes the patron out of the line for the book. Returns false if they were not waiting for it.
+     */
+    public boolean cancelHold(String isbn, String patronName) {
+        lock.readLock().lock();
+        try {
+            return holds.cancel(patronName, IsbnKey.of(isbn));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Holds the patron is still waiting on, oldest first. Fulfilled holds show up as loans instead.
+     */
+    public List<Hold> getHoldsFor(String patronName) {
+        lock.readLock().lock();
+        try {
+            return holds.getHolds(patronName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Place in line for the hold, 1 for next, or 0 once it is no longer waiting.
+     */
+    public int getHoldPosition(Hold hold) {
+        lock.readLock().lock();
+        try {
+            return holds.getPosition(hold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of patrons waiting for the book.
+     */
+    public int getHoldCount(String isbn) {
+        lock.readLock().lock();
+        try {
+            return holds.getWaitingCount(IsbnKey.of(isbn));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lends free copies of the book to waiting patrons in the order they placed their holds, with the usual
+     * loan period. Returns the number of holds served. Must be called with the write lock held, which keeps
+     * walk-in borrows from taking the copies in between.
+     */
+    private int fulfilHolds(Book book) {
+        int served = 0;
+        while (book.isAvailable() && holds.hasWaiting(book.getIsbnKey())) {
+            Hold hold = holds.next(book.getIsbnKey());
+            if (hold == null) {
+                break;
+            }
+            Date due = new Date(System.currentTimeMillis() + HOLD_LOAN_DAYS * 86_400_000L);
+            Loan loan = book.borrowBook(hold.getPatronName(), due);
+            hold.setLoan(loan);
+            recordLoan(book, loan);
+            served++;
+        }
+        return served;
+    }
+
+    /**
+     * Borrows every available book in the list for the same borrower. Returns the number of books borrowed.
+     */
+    public int borrowBooks(Collection<String> isbns, String borrowerName, Date returnDueDate) {
+        List<Book> borrowed = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (String isbn : isbns) {
+                Loan loan = lend(isbn, borrowerName, returnDueDate);
+                if (loan != null) {
+                    borrowed.add(loan.getBook());
+                }
+            }
+            if (!borrowed.isEmpty()) {
+                queryCache.circulationChanged();
+                fireBooksUpdated(borrowed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return borrowed.size();
+    }
+
+    /**
+     * Returns every borrowed book in the list, e.g. the contents of the book drop. Returns the number of books returned.
+     */
+    public int returnBooks(Collection<String> isbns) {
+        List<Book> returned = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (String isbn : isbns) {
+                Returned taken = takeBack(isbn, -1);
+                if (taken != null) {
+                    returned.add(taken.getLoan().getBook());
+                }
+            }
+            if (!returned.isEmpty()) {
+                queryCache.circulationChanged();
+                fireBooksUpdated(returned);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return returned.size();
+    }
+
+    /**
+     * Completions of the prefix for "title", "author" or "publisher", most borrowed first.
+     * With "all" the three fields are merged by score. Other attributes have no suggestions.
+     */
+    public List<TypeaheadIndex.Suggestion> suggest(String attribute, String prefix, int limit) {
+        String field = attribute.toLowerCase();
+        lock.readLock().lock();
+        try {
+            if (!field.equals("all")) {
+                TypeaheadIndex index = suggestionIndexes.get(field);
+                return index == null ? new ArrayList<>() : index.suggest(prefix, limit);
+            }
+
+            List<TypeaheadIndex.Suggestion> merged = new ArrayList<>();
+            for (String suggestionField : SUGGESTION_FIELDS) {
+                merged.addAll(suggestionIndexes.get(suggestionField).suggest(prefix, limit));
+            }
+            merged.sort(Comparator.comparingLong(TypeaheadIndex.Suggestion::getScore).reversed()
+                    .thenComparing(suggestion -> suggestion.getText().toLowerCase()));
+
+            Set<String> seen = new HashSet<>();
+            List<TypeaheadIndex.Suggestion> result = new ArrayList<>();
+            for (TypeaheadIndex.Suggestion suggestion : merged) {
+                if (result.size() < limit && seen.add(suggestion.getText().toLowerCase())) {
+                    result.add(suggestion);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The loan indexes are concurrent, so these only need the lock in shared mode.
+     */
+    private void indexLoan(Loan loan) {
+        dueDates.add(loan);
+        borrowers.add(loan);
+    }
+
+    private void unindexLoan(Loan loan) {
+        dueDates.remove(loan);
+        borrowers.remove(loan);
+    }
+
+    private void indexLoans(Book book) {
+        dueDates.addAll(book);
+        borrowers.addAll(book);
+    }
+
+    private void unindexLoans(Book book) {
+        dueDates.removeAll(book);
+        borrowers.removeAll(book);
+    }
+
+    /**
+     * Drops a deleted book from every index, cancels its holds and stops its reminders.
+     */
+    private void unindexBook(Book book) {
+        unindexText(book);
+        unindexLoans(book);
+        holds.cancelAll(book.getIsbnKey());
+        for (Loan loan : book.getLoans()) {
+            reminders.loanEnded(loan);
+        }
+    }
+
+    /**
+     * Records loans that an edit of the availability ended or started.
+     */
+    private void recordLoanChanges(List<Loan> before, List<Loan> after) {
+        long now = System.currentTimeMillis();
+        Set<Loan> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(after);
+        for (Loan loan : before) {
+            if (!kept.remove(loan)) {
+                history.recordReturn(loan, now);
+                reminders.loanEnded(loan);
+            }
+        }
+        for (Loan loan : kept) {
+            history.recordBorrow(loan, now);
+            reminders.loanStarted(loan);
+        }
+    }
+
+    private void scheduleScoreUpdate() {
+        if (scoresScheduled.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                scoresScheduled.set(false);
+                lock.writeLock().lock();
+                try {
+                    applyPendingScores();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds one to the suggestion scores of every book borrowed since the last call.
+     * Must be called with the write lock held, and before anything that reads or moves a book's score.
+     */
+    private void applyPendingScores() {
+        Book book;
+        while ((book = pendingScores.poll()) != null) {
+            for (String field : SUGGESTION_FIELDS) {
+                suggestionIndexes.get(field).addScore(book.getFieldValue(field), 1);
+            }
+        }
+    }
+
+    private static String[] suggestionValues(Book book) {
+        String[] values = new String[SUGGESTION_FIELDS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = book.getFieldValue(SUGGESTION_FIELDS[i]);
+        }
+        return values;
+    }
+
+    private void indexText(Book book) {
+        for (String field : SUGGESTION_FIELDS) {
+            suggestionIndexes.get(field).add(book.getFieldValue(field), book.getBorrowCount());
+        }
+        for (String field : FUZZY_FIELDS) {
+            fuzzyIndexes.get(field).add(book.getFieldValue(field), book);
+        }
+    }
+
+    private void unindexText(Book book) {
+        applyPendingScores();
+        for (String field : SUGGESTION_FIELDS) {
+            suggestionIndexes.get(field).remove(book.getFieldValue(field), book.getBorrowCount());
+        }
+        for (String field : FUZZY_FIELDS) {
+            fuzzyIndexes.get(field).remove(book.getFieldValue(field), book);
+        }
+    }
+
+    /**
+     * Builds the three suggestion indexes in parallel, they share nothing.
+     */
+    private static Map<String, TypeaheadIndex> buildSuggestionIndexes(List<Book> books) {
+        long[] scores = new long[books.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = books.get(i).getBorrowCount();
+        }
+
+        return Arrays.stream(SUGGESTION_FIELDS).parallel().collect(Collectors.toMap(field -> field, field -> {
+            List<String> values = new ArrayList<>(books.size());
+            for (Book book : books) {
+                values.add(book.getFieldValue(field));
+            }
+            TypeaheadIndex index = new TypeaheadIndex();
+            index.rebuild(values, scores);
+            return index;
+        }));
+    }
+
+    private static Map<String, FuzzyIndex<Book>> buildFuzzyIndexes(List<Book> books) {
+        return Arrays.stream(FUZZY_FIELDS).parallel().collect(Collectors.toMap(field -> field, field -> {
+            FuzzyIndex<Book> index = new FuzzyIndex<>();
+            for (Book book : books) {
+                index.add(book.getFieldValue(field), book);
+            }
+            return index;
+        }));
+    }
+
+    /**
+     * Typo tolerant search on "title", "author" or both ("all"): every word of the query has to be within
+     * {@code maxDistance} edits of a word in the field, so "Tolkein" finds Tolkien. Closest matches come first.
+     * Other attributes fall back to {@link #searchBooks(String, String)}.
+     */
+    public List<Book> fuzzySearch(String attribute, String query, int maxDistance) {
+        String field = attribute.toLowerCase();
+        lock.readLock().lock();
+        try {
+            if (!field.equals("all")) {
+                FuzzyIndex<Book> index = fuzzyIndexes.get(field);
+                return index != null ? index.search(query, maxDistance) : searchBooks(attribute, query);
+            }
+
+            Set<Book> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Book> results = new ArrayList<>();
+            for (String fuzzyField : FUZZY_FIELDS) {
+                for (Book book : fuzzyIndexes.get(fuzzyField).search(query, maxDistance)) {
+                    if (merged.add(book)) {
+                        results.add(book);
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
+    /**
+     * Sort order for an attribute as used by {@link #sortBooks(String, boolean)}, or null for an unknown attribute.
+     */
+    static Comparator<Book> comparatorFor(String attribute) {
         switch (attribute.toLowerCase()) {
             case "isbn":
-                comparator = Comparator.comparing(Book::getIsbn);
-                break;
+                return Comparator.comparing(Book::getIsbn);
             case "title":
-                comparator = Comparator.comparing(Book::getTitle);
-                break;
+                return Comparator.comparing(Book::getTitle);
             case "author":
-                comparator = Comparator.comparing(Book::getAuthor);
-                break;
+                return Comparator.comparing(Book::getAuthor);
             case "publisher":
-                comparator = Comparator.comparing(Book::getPublisher);
-                break;
+                return Comparator.comparing(Book::getPublisher);
             case "year":
             case "publicationyear":
-                comparator = Comparator.comparing(Book::getPublicationYear);
-                break;
+                return Comparator.comparing(Book::getPublicationYear);
             case "genre":
-                comparator = Comparator.comparing(Book::getGenre);
-                break;
+                return Comparator.comparing(Book::getGenre);
             case "available":
             case "isavailable":
-                comparator = Comparator.comparing(Book::isAvailable);
-                break;
+                return Comparator.comparing(Book::isAvailable);
             case "borrower":
             case "borrowername":
-                comparator = Comparator.comparing(
+                return Comparator.comparing(
                         book -> book.getBorrowerName() != null ? book.getBorrowerName() : ""
                 );
-                break;
             case "borrowdate":
-                comparator = Comparator.comparing(
+                return Comparator.comparing(
                         book -> book.getBorrowDate() != null ? book.getBorrowDate() : new Date(0)
                 );
-                break;
             default:
-                System.out.println("Invalid sort attribute: " + attribute);
-                return;
+                return null;
+        }
+    }
+
+    /**
+     * Reads the sort key of a book for an attribute of {@link #comparatorFor(String)}, or returns null for an
+     * unknown attribute. Keys compare like that comparator does, but hold the value as it was when read, so a
+     * snapshot can be sorted outside the lock while its books are borrowed, returned or edited. Comparing the
+     * live books then could see a value change mid-sort, which breaks the sort's contract.
+     */
+    static Function<Book, SortKey> sortKeyFor(String attribute) {
+        switch (attribute.toLowerCase()) {
+            case "isbn":
+                return book -> new SortKey(book, book.getIsbn());
+            case "title":
+                return book -> new SortKey(book, book.getTitle());
+            case "author":
+                return book -> new SortKey(book, book.getAuthor());
+            case "publisher":
+                return book -> new SortKey(book, book.getPublisher());
+            case "year":
+            case "publicationyear":
+                return book -> new SortKey(book, book.getPublicationYear());
+            case "genre":
+                return book -> new SortKey(book, book.getGenre().ordinal());
+            case "available":
+            case "isavailable":
+                return book -> new SortKey(book, book.isAvailable() ? 1 : 0);
+            case "borrower":
+            case "borrowername":
+                return book -> {
+                    String borrower = book.getBorrowerName();
+                    return new SortKey(book, borrower != null ? borrower : "");
+                };
+            case "borrowdate":
+                return book -> {
+                    Date borrowed = book.getBorrowDate();
+                    return new SortKey(book, borrowed != null ? borrowed.getTime() : 0);
+                };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A book with the value it had for one sort attribute, text or number.
+     */
+    static final class SortKey implements Comparable<SortKey> {
+        final Book book;
+        private final String text;
+        private final long number;
+
+        SortKey(Book book, String text) {
+            this.book = book;
+            this.text = text;
+            this.number = 0;
+        }
+
+        SortKey(Book book, long number) {
+            this.book = book;
+            this.text = null;
+            this.number = number;
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            return text != null ? text.compareTo(other.text) : Long.compare(number, other.number);
+        }
+    }
+
+    public void sortBooks(String attribute, boolean ascending) {
+        Comparator<Book> comparator = comparatorFor(attribute);
+        if (comparator == null) {
+            System.out.println("Invalid sort attribute: " + attribute);
+            return;
         }
 
         if (!ascending) {
             comparator = comparator.reversed();
         }
 
-        books.sort(comparator);
+        lock.writeLock().lock();
+        try {
+            books.reorder(comparator);
+            rebuildIndex();
+            queryCache.catalogChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
         System.out.println("Books sorted by " + attribute + " (" +
                 (ascending ? "ascending" : "descending") + ")");
     }
 
 
+    /**
+     * Books matching every criterion: "year" takes an exact year or one prefixed with {@code >}, {@code <} or
+     * {@code =}, "available" must match exactly and other fields match case-insensitive substrings.
+     * Results are cached until one of the filtered fields changes.
+     */
     public List<Book> filterBooks(Map<String, String> criteria) {
-        List<Book> results = new ArrayList<>(books);
+        Map<String, String> normalized = new TreeMap<>();
+        for (Map.Entry<String, String> entry : criteria.entrySet()) {
+            normalized.put(entry.getKey().toLowerCase(), entry.getValue().toLowerCase());
+        }
+        StringBuilder key = new StringBuilder("filter");
+        for (Map.Entry<String, String> entry : normalized.entrySet()) {
+            key.append(KEY_SEPARATOR).append(entry.getKey()).append(KEY_SEPARATOR).append(entry.getValue());
+        }
+        List<Book> cached = queryCache.get(key.toString());
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        QueryCache.Stamp stamp = queryCache.stamp(normalized.keySet());
+
+        List<Book> results = getBooks();
 
         for (Map.Entry<String, String> entry : criteria.entrySet()) {
             String field = entry.getKey().toLowerCase();
             String value = entry.getValue().toLowerCase();
 
-            results = results.stream().filter(book -> {
-                String bookValue = book.getFieldValue(field).toLowerCase();
-
-                if (field.equals("year") || field.equals("publicationyear")) {
-                    try {
-                        if (value.startsWith(">")) {
-                            int threshold = Integer.parseInt(value.substring(1));
-                            return book.getPublicationYear() > threshold;
-                        } else if (value.startsWith("<")) {
-                            int threshold = Integer.parseInt(value.substring(1));
-                            return book.getPublicationYear() < threshold;
-                        } else if (value.startsWith("=")) {
-                            int exact = Integer.parseInt(value.substring(1));
-                            return book.getPublicationYear() == exact;
-                        } else {
-                            int exact = Integer.parseInt(value);
-                            return book.getPublicationYear() == exact;
-                        }
-                    } catch (NumberFormatException e) {
-                        return false;
-                    }
-                }
+            results = results.stream().filter(criterionMatcher(field, value)).collect(Collectors.toList());
+        }
 
-                if (field.equals("available") || field.equals("isavailable")) {
-                    return bookValue.equals(value);
-                }
+        queryCache.put(key.toString(), stamp, new ArrayList<>(results));
+        return results;
+    }
 
-                return bookValue.contains(value);
-            }).collect(Collectors.toList());
+    /**
+     * Lazy version of {@link #filterBooks(Map)}, see {@link #streamBooks()}.
+     */
+    public Stream<Book> streamFilter(Map<String, String> criteria) {
+        Predicate<Book> matcher = book -> true;
+        for (Map.Entry<String, String> entry : criteria.entrySet()) {
+            matcher = matcher.and(criterionMatcher(entry.getKey().toLowerCase(), entry.getValue().toLowerCase()));
         }
+        return streamBooks().filter(matcher);
+    }
 
-        return results;
+    /**
+     * Matcher for one filter criterion, both already lowercased.
+     */
+    private static Predicate<Book> criterionMatcher(String field, String value) {
+        return book -> {
+            String bookValue = book.getFieldValue(field).toLowerCase();
+
+            if (field.equals("year") || field.equals("publicationyear")) {
+                try {
+                    if (value.startsWith(">")) {
+                        int threshold = Integer.parseInt(value.substring(1));
+                        return book.getPublicationYear() > threshold;
+                    } else if (value.startsWith("<")) {
+                        int threshold = Integer.parseInt(value.substring(1));
+                        return book.getPublicationYear() < threshold;
+                    } else if (value.startsWith("=")) {
+                        int exact = Integer.parseInt(value.substring(1));
+                        return book.getPublicationYear() == exact;
+                    } else {
+                        int exact = Integer.parseInt(value);
+                        return book.getPublicationYear() == exact;
+                    }
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+
+            if (field.equals("available") || field.equals("isavailable")) {
+                return bookValue.equals(value);
+            }
+
+            return bookValue.contains(value);
+        };
     }
 
 
     public Map<String, Object> getLibraryStats() {
         Map<String, Object> stats = new HashMap<>();
+        List<Book> books = getBooks();
 
         stats.put("totalBooks", books.size());
         stats.put("availableBooks", books.stream().filter(Book::isAvailable).count());
         stats.put("borrowedBooks", books.stream().filter(b -> !b.isAvailable()).count());
+        stats.put("totalCopies", books.stream().mapToLong(Book::getTotalCopies).sum());
+        stats.put("copiesOnLoan", books.stream().mapToLong(b -> b.getTotalCopies() - b.getAvailableCopies()).sum());
 
         Map<Genre, Long> genreCount = books.stream()
                 .collect(Collectors.groupingBy(Book::getGenre, Collectors.counting()));
@@ -231,12 +1173,88 @@ public class LibraryManager {
         stats.put("oldestBook", getOldestBook(books));
         stats.put("newestBook", getNewestBook(books));
         stats.put("averagePublicationYear", getAveragePublicationYear(books));
-        stats.put("overdueBooks", getOverdueBooks(books));
-        stats.put("topBorrowers", getTopBorrowers(books));
+        stats.put("overdueBooks", manager.getOverdueBooks());
+        stats.put("topBorrowers", manager.getTopBorrowers(5));
+
+        LocalDate today = LocalDate.now();
+        stats.put("loansLast30Days", manager.getLoanHistory().loansPerDay(today.minusDays(29), today)
+                .values().stream().mapToLong(Long::longValue).sum());
+        stats.put("averageLoanDays", manager.getLoanHistory().averageLoanDays(today.minusDays(29), today));
 
         return stats;
     }
 
+    /**
+     * Returns the advanced statistics without blocking the caller.
+     * If the catalog has not changed since the last computation the returned future is already complete.
+     * Otherwise the statistics are computed on a background thread; concurrent callers share one computation.
+     * A computation that failed is not shared, the next call starts a new one.
+     * Overdue books depend on the clock rather than the catalog, so a cached result gets a fresh overdue list.
+     */
+    public synchronized CompletableFuture<Map<String, Object>> getAdvancedLibraryStatsAsync() {
+        long current = version.get();
+        CachedStats cached = cachedStats;
+        if (cached != null && cached.version == current) {
+            Map<String, Object> stats = new HashMap<>(cached.stats);
+            stats.put("overdueBooks", getOverdueBooks());
+            return CompletableFuture.completedFuture(Collections.unmodifiableMap(stats));
+        }
+        if (pendingStats != null && pendingStatsVersion == current && !pendingStats.isCompletedExceptionally()) {
+            return pendingStats;
+        }
+
+        CompletableFuture<Map<String, Object>> future = CompletableFuture.supplyAsync(() -> {
+            Map<String, Object> stats = Collections.unmodifiableMap(getAdvancedLibraryStats(this));
+            CachedStats previous = cachedStats;
+            if (previous == null || previous.version < current) {
+                cachedStats = new CachedStats(current, stats);
+            }
+            return stats;
+        }, STATS_EXECUTOR);
+        pendingStatsVersion = current;
+        pendingStats = future;
+        future.whenComplete((stats, error) -> {
+            if (error != null) {
+                forgetPendingStats(future);
+            }
+        });
+        return future;
+    }
+
+    private synchronized void forgetPendingStats(CompletableFuture<Map<String, Object>> failed) {
+        if (pendingStats == failed) {
+            pendingStats = null;
+            pendingStatsVersion = -1;
+        }
+    }
+
+    /**
+     * Last computed statistics, possibly stale, or null if none were computed yet.
+     * Useful to show something while {@link #getAdvancedLibraryStatsAsync()} recomputes.
+     */
+    public Map<String, Object> getCachedStats() {
+        CachedStats cached = cachedStats;
+        return cached == null ? null : cached.stats;
+    }
+
+    /**
+     * True if the cached statistics match the current catalog.
+     */
+    public boolean isCachedStatsCurrent() {
+        CachedStats cached = cachedStats;
+        return cached != null && cached.version == version.get();
+    }
+
+    private static class CachedStats {
+        final long version;
+        final Map<String, Object> stats;
+
+        CachedStats(long version, Map<String, Object> stats) {
+            this.version = version;
+            this.stats = stats;
+        }
+    }
+
     private Genre getMostPopularGenre(List<Book> books) {
         return books.stream()
                 .collect(Collectors.groupingBy(Book::getGenre, Collectors.counting()))
@@ -265,43 +1283,344 @@ public class LibraryManager {
                 .orElse(0.0);
     }
 
-    private List<Book> getOverdueBooks(List<Book> books) {
-        Date today = new Date();
-        return books.stream()
-                .filter(book -> !book.isAvailable() &&
-                        book.getReturnDueDate() != null &&
-                        book.getReturnDueDate().before(today))
-                .collect(Collectors.toList());
+    /**
+     * Borrowed books with a copy whose due date has passed, most overdue first.
+     */
+    public List<Book> getOverdueBooks() {
+        return toBooks(getOverdueLoans());
     }
 
-    private Map<String, Long> getTopBorrowers(List<Book> books) {
-        return books.stream()
-                .filter(book -> !book.isAvailable() && book.getBorrowerName() != null)
-                .collect(Collectors.groupingBy(Book::getBorrowerName, Collectors.counting()))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+    /**
+     * Loans whose due date has passed, most overdue first.
+     */
+    public List<Loan> getOverdueLoans() {
+        lock.readLock().lock();
+        try {
+            return dueDates.dueBefore(System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public ArrayList<Book> getBooks() {
+    /**
+     * Borrowed books with a copy that is not overdue yet but due within the given number of days, earliest first.
+     */
+    public List<Book> getBooksDueWithin(int days) {
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            return toBooks(dueDates.dueBetween(now, now + days * 86_400_000L));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of overdue copies.
+     */
+    public int countOverdue() {
+        lock.readLock().lock();
+        try {
+            return dueDates.countDueBefore(System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Books the borrower currently has out, once per copy. The name is matched ignoring case and surrounding spaces.
+     */
+    public List<Book> getBooksBorrowedBy(String borrowerName) {
+        lock.readLock().lock();
+        try {
+            return borrowers.getBooks(borrowerName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Loans the borrower currently has, oldest first.
+     */
+    public List<Loan> getLoansFor(String borrowerName) {
+        lock.readLock().lock();
+        try {
+            return borrowers.getLoans(borrowerName);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Books of the loans in order, each book once.
+     */
+    static List<Book> toBooks(List<Loan> loans) {
+        Set<Book> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Book> books = new ArrayList<>();
+        for (Loan loan : loans) {
+            if (seen.add(loan.getBook())) {
+                books.add(loan.getBook());
+            }
+        }
         return books;
     }
 
+    /**
+     * The n borrowers with the most books out and how many they have, most first.
+     */
+    public Map<String, Long> getTopBorrowers(int n) {
+        lock.readLock().lock();
+        try {
+            return borrowers.top(n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Circulation history for reports (loans per day, week or genre, loan lengths). Safe to query from any thread.
+     */
+    public LoanHistory getLoanHistory() {
+        return history;
+    }
+
+    /**
+     * The n books borrowed most often in {@code [from, to]} with their borrow counts, most first.
+     * Titles that were deleted since are left out.
+     */
+    public LinkedHashMap<Book, Long> getMostBorrowedBooks(LocalDate from, LocalDate to, int n) {
+        LinkedHashMap<Book, Long> top = new LinkedHashMap<>();
+        // ask for some extra in case a few were deleted
+        for (Map.Entry<Long, Long> entry : history.topTitles(from, to, n + 10).entrySet()) {
+            Book book = getBookByIsbnKey(entry.getKey());
+            if (book != null && top.size() < n) {
+                top.put(book, entry.getValue());
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns a snapshot of the catalog in storage order. Changing the returned list does not change the catalog.
+     */
+    public ArrayList<Book> getBooks() {
+        lock.readLock().lock();
+        try {
+            return books.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lazy stream of the books in catalog order, for callers that need the first few matches or only whether
+     * any book matches. Books are copied out of the storage a chunk at a time under the shared lock as the stream
+     * is consumed, so short-circuiting operations stop the scan early and the stream may be consumed outside the
+     * lock, even by code that changes the catalog. Parallel streams split the rows between threads.
+     * Changes made while the stream is consumed may or may not be seen.
+     */
+    public Stream<Book> streamBooks() {
+        lock.readLock().lock();
+        try {
+            return StreamSupport.stream(books.spliterator(lock.readLock()), false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the catalog. Books whose ISBN is invalid or duplicates an earlier entry are skipped.
+     */
     public void setBooks(ArrayList<Book> books) {
-        this.books = books;
+        SlotMap<Book> store = new SlotMap<>(books.size());
+        LongKeyMap<Integer> index = new LongKeyMap<>(books.size());
+
+        for (Book book : books) {
+            long key = book.getIsbnKey();
+            if (key != IsbnKey.INVALID && !index.containsKey(key)) {
+                index.put(key, store.add(book));
+            }
+        }
+
+        if (store.size() < books.size()) {
+            System.err.println("Skipped " + (books.size() - store.size()) + " books with invalid or duplicate ISBN.");
+        }
+        ArrayList<Book> stored = store.toList();
+        Map<String, TypeaheadIndex> suggestions = buildSuggestionIndexes(stored);
+        Map<String, FuzzyIndex<Book>> fuzzy = buildFuzzyIndexes(stored);
+        DueDateIndex due = new DueDateIndex();
+        BorrowerIndex borrowed = new BorrowerIndex();
+        for (Book book : stored) {
+            due.addAll(book);
+            borrowed.addAll(book);
+        }
+
+        lock.writeLock().lock();
+        try {
+            this.books = store;
+            this.isbnIndex = index;
+            this.suggestionIndexes = suggestions;
+            this.fuzzyIndexes = fuzzy;
+            this.dueDates = due;
+            this.borrowers = borrowed;
+            // the new indexes were scored from the books' borrow counts, which already include these
+            pendingScores.clear();
+            reminders.clear();
+            scheduleReminders(store.toList());
+            fireCatalogReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a listener for due soon and overdue reminders. The first registration starts the reminder
+     * thread and schedules every current loan.
+     */
+    public void addLoanEventListener(LoanEventListener listener) {
+        reminders.addListener(listener);
+        if (reminders.start()) {
+            scheduleReminders(getBooks());
+        }
+    }
+
+    public void removeLoanEventListener(LoanEventListener listener) {
+        reminders.removeListener(listener);
+    }
+
+    private void scheduleReminders(List<Book> books) {
+        for (Book book : books) {
+            for (Loan loan : book.getLoans()) {
+                reminders.loanStarted(loan);
+            }
+        }
+    }
+
+    public void addCatalogListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeCatalogListener(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Modification version of the catalog. It changes on every add, delete, update, borrow, return and reload.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Versions of the fields a query reads ("all" for every searchable field) and of the catalog, for callers
+     * that keep a result of a search or filter themselves and want to know when it needs running again.
+     * Take the stamp before running the query.
+     */
+    public QueryCache.Stamp stampFields(Collection<String> fields) {
+        List<String> read = new ArrayList<>(fields);
+        if (read.removeIf(field -> field.equalsIgnoreCase("all"))) {
+            read.addAll(Arrays.asList(SEARCHABLE_FIELDS));
+        }
+        return queryCache.stamp(read);
+    }
+
+    /**
+     * False once a field or the catalog covered by the stamp has changed.
+     */
+    public boolean isCurrent(QueryCache.Stamp stamp) {
+        return queryCache.isCurrent(stamp);
+    }
+
+    /**
+     * Size, hit rate, evictions and invalidations of the search and filter result cache.
+     */
+    public Map<String, Object> getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    private void fireBookAdded(Book book) {
+        version.incrementAndGet();
+        queryCache.catalogChanged();
+        for (CatalogListener listener : listeners) {
+            listener.bookAdded(book);
+        }
+    }
+
+    private void fireBookRemoved(Book book) {
+        version.incrementAndGet();
+        queryCache.catalogChanged();
+        for (CatalogListener listener : listeners) {
+            listener.bookRemoved(book);
+        }
+    }
+
+    private void fireBookUpdated(Book book) {
+        version.incrementAndGet();
+        for (CatalogListener listener : listeners) {
+            listener.bookUpdated(book);
+        }
+    }
+
+    private void fireBooksAdded(List<Book> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        version.incrementAndGet();
+        queryCache.catalogChanged();
+        for (CatalogListener listener : listeners) {
+            listener.booksAdded(added);
+        }
+    }
+
+    private void fireBooksRemoved(List<Book> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        version.incrementAndGet();
+        queryCache.catalogChanged();
+        for (CatalogListener listener : listeners) {
+            listener.booksRemoved(removed);
+        }
+    }
+
+    private void fireBooksUpdated(List<Book> updated) {
+        version.incrementAndGet();
+        for (CatalogListener listener : listeners) {
+            listener.booksUpdated(updated);
+        }
+    }
+
+    private void fireCatalogReloaded() {
+        version.incrementAndGet();
+        queryCache.catalogChanged();
+        for (CatalogListener listener : listeners) {
+            listener.catalogReloaded();
+        }
     }
 
     public int getTotalBooks() {
-        return books.size();
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    /**
+     * Looks up a book by ISBN in either ISBN-10 or ISBN-13 form, with or without hyphens.
+     */
     public Book getBookByIsbn(String isbn) {
-        return searchFirstBook("isbn", isbn);
+        return getBookByIsbnKey(IsbnKey.of(isbn));
+    }
+
+    public Book getBookByIsbnKey(long isbnKey) {
+        lock.readLock().lock();
+        try {
+            Integer row = isbnIndex.get(isbnKey);
+            return row == null ? null : books.get(row);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package managers;
+
+import entities.Loan;
+
+import java.util.List;
+
+/**
+ * Receives due date reminders from a {@link LibraryManager}, see {@link LibraryManager#addLoanEventListener}.
+ * Callbacks run on the reminder thread with every loan that reached the state during the same tick, so a
+ * listener sees one call per tick however many loans are affected. Implementations must not block for long.
+ */
+public interface LoanEventListener {
+
+    /**
+     * The loans will be due within the reminder lead time (two days unless configured otherwise).
+     */
+    void loansDueSoon(List<Loan> loans);
+
+    /**
+     * The due date of the loans just passed and they have not been returned.
+     */
+    void loansBecameOverdue(List<Loan> loans);
+}
@@ -0,0 +1,188 @@
+package managers;
+
+import entities.Loan;
+import utils.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires due soon and became overdue events for loans.
+ * <p>
+ * Every loan with a due date gets two timeouts in a {@link TimingWheel}: one a lead time before the due date and
+ * one at the due date. Only transitions that are still ahead are scheduled, so loans that were already overdue
+ * when the scheduler started do not produce a burst of events. The wheel is owned by one daemon thread; loans
+ * starting and ending are handed to it through a lock-free queue, so borrow and return threads never wait on it.
+ * Tick length and lead time can be set with {@code -Dlibrary.reminders.tickMillis} (default 1000) and
+ * {@code -Dlibrary.reminders.dueSoonHours} (default 48).
+ */
+class LoanReminderScheduler {
+    private final long tickMillis = Long.getLong("library.reminders.tickMillis", 1000);
+    private final long dueSoonMillis = TimeUnit.HOURS.toMillis(Long.getLong("library.reminders.dueSoonHours", 48));
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final List<LoanEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    // owned by the reminder thread
+    private TimingWheel<Reminder> wheel;
+    private final Map<Loan, Timers> timers = new IdentityHashMap<>();
+    private final List<Loan> dueSoon = new ArrayList<>();
+    private final List<Loan> overdue = new ArrayList<>();
+
+    void addListener(LoanEventListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(LoanEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the reminder thread. Returns false if it was already running.
+     */
+    boolean start() {
+        if (!started.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(this::run, "loan-reminders");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Starts tracking the loan. Does nothing before {@link #start()}, the owner seeds existing loans when starting.
+     */
+    void loanStarted(Loan loan) {
+        if (started.get() && loan.getDueDate() != null) {
+            commands.add(() -> schedule(loan));
+        }
+    }
+
+    void loanEnded(Loan loan) {
+        if (started.get() && loan.getDueDate() != null) {
+            commands.add(() -> cancel(loan));
+        }
+    }
+
+    /**
+     * Forgets every loan, e.g. before the catalog is replaced.
+     */
+    void clear() {
+        if (started.get()) {
+            commands.add(() -> {
+                for (Timers loanTimers : timers.values()) {
+                    loanTimers.cancel(wheel);
+                }
+                timers.clear();
+            });
+        }
+    }
+
+    private void run() {
+        wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        while (true) {
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                command.run();
+            }
+
+            wheel.advanceTo(System.currentTimeMillis(), this::fire);
+            deliver();
+
+            long now = System.currentTimeMillis();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(tickMillis - Math.floorMod(now, tickMillis)));
+        }
+    }
+
+    private void schedule(Loan loan) {
+        if (timers.containsKey(loan)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long due = loan.getDueDate().getTime();
+        if (due <= now) {
+            return;
+        }
+
+        Timers loanTimers = new Timers();
+        if (due - dueSoonMillis > now) {
+            loanTimers.dueSoon = wheel.schedule(due - dueSoonMillis, new Reminder(loan, false));
+        }
+        loanTimers.overdue = wheel.schedule(due, new Reminder(loan, true));
+        timers.put(loan, loanTimers);
+    }
+
+    private void cancel(Loan loan) {
+        Timers loanTimers = timers.remove(loan);
+        if (loanTimers != null) {
+            loanTimers.cancel(wheel);
+        }
+    }
+
+    private void fire(Reminder reminder) {
+        if (reminder.overdue) {
+            timers.remove(reminder.loan);
+            overdue.add(reminder.loan);
+        } else {
+            dueSoon.add(reminder.loan);
+        }
+    }
+
+    private void deliver() {
+        if (dueSoon.isEmpty() && overdue.isEmpty()) {
+            return;
+        }
+        List<Loan> soon = Collections.unmodifiableList(new ArrayList<>(dueSoon));
+        List<Loan> late = Collections.unmodifiableList(new ArrayList<>(overdue));
+        dueSoon.clear();
+        overdue.clear();
+
+        for (LoanEventListener listener : listeners) {
+            try {
+                if (!soon.isEmpty()) {
+                    listener.loansDueSoon(soon);
+                }
+                if (!late.isEmpty()) {
+                    listener.loansBecameOverdue(late);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Loan event listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Reminder {
+        final Loan loan;
+        final boolean overdue;
+
+        Reminder(Loan loan, boolean overdue) {
+            this.loan = loan;
+            this.overdue = overdue;
+        }
+    }
+
+    private static class Timers {
+        TimingWheel.Timeout<Reminder> dueSoon;
+        TimingWheel.Timeout<Reminder> overdue;
+
+        void cancel(TimingWheel<Reminder> wheel) {
+            if (dueSoon != null) {
+                wheel.cancel(dueSoon);
+            }
+            if (overdue != null) {
+                wheel.cancel(overdue);
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package managers;
+
+import entities.Book;
+import entities.Hold;
+import entities.Loan;
+import entities.enums.Genre;
+import utils.IsbnKey;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Catalog split by ISBN across several {@link LibraryManager} shards, so queries use more than one core.
+ * <p>
+ * A book lives in the shard its normalized ISBN key hashes to, which means ISBN-10 and ISBN-13 forms of the same
+ * book still meet as duplicates. Every shard has its own lock, storage, indexes and result cache. Operations on
+ * one ISBN (add, update, delete, borrow, return, holds) go straight to its shard and only contend with other
+ * operations there. Searches, filters, sorting and statistics run on all shards at once on a shared pool and the
+ * partial results are combined: lists are concatenated in shard order, sorted lists and the overdue list are
+ * merged k ways, counts and distributions are summed and averages weighted.
+ * <p>
+ * The server, batch and export modes of Main use it when started with {@code -Dlibrary.shards=N} (N above 1);
+ * the console and the GUI keep a single LibraryManager. Created without a count, the shard count is that
+ * property or else the number of cores.
+ */
+public class ShardedLibraryManager implements Catalog {
+    private static final int DEFAULT_SHARDS = Integer.getInteger("library.shards",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger SHARD_THREADS = new AtomicInteger();
+    private static final ExecutorService SHARD_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "catalog-shard-" + SHARD_THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final LibraryManager[] shards;
+    private Map<String, Object> cachedStats;
+    private long cachedStatsVersion = -1;
+    private CompletableFuture<Map<String, Object>> pendingStats;
+    private long pendingStatsVersion = -1;
+
+    public ShardedLibraryManager() {
+        this(DEFAULT_SHARDS);
+    }
+
+    public ShardedLibraryManager(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        shards = new LibraryManager[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LibraryManager();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Number of books in each shard, to check the spread.
+     */
+    public int[] getShardSizes() {
+        List<Integer> sizes = scatter(LibraryManager::getTotalBooks);
+        int[] result = new int[sizes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sizes.get(i);
+        }
+        return result;
+    }
+
+    private int shardIndex(long isbnKey) {
+        // the keys are sequential within a publisher, spread them before taking the remainder
+        long mixed = isbnKey * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(mixed ^ (mixed >>> 32), (long) shards.length);
+    }
+
+    private LibraryManager shardFor(long isbnKey) {
+        return shards[shardIndex(isbnKey)];
+    }
+
+    private LibraryManager shardFor(String isbn) {
+        // an invalid ISBN is in no shard, any shard will say so
+        return shardFor(IsbnKey.of(isbn));
+    }
+
+    /**
+     * Runs the task on every shard in parallel and returns the results in shard order.
+     */
+    private <T> List<T> scatter(Function<LibraryManager, T> task) {
+        if (shards.length == 1) {
+            return Collections.singletonList(task.apply(shards[0]));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.length);
+        for (LibraryManager shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(shard), SHARD_EXECUTOR));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static <T> List<T> concat(List<? extends List<T>> parts) {
+        int size = 0;
+        for (List<T> part : parts) {
+            size += part.size();
+        }
+        List<T> all = new ArrayList<>(size);
+        for (List<T> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    /**
+     * Merges lists that are each sorted by the comparator into one sorted list, taking the head of the list
+     * with the smallest next element each time. Ties keep shard order.
+     */
+    static <T> List<T> mergeSorted(List<? extends List<T>> runs, Comparator<? super T> comparator) {
+        int size = 0;
+        for (List<T> run : runs) {
+            size += run.size();
+        }
+        List<T> merged = new ArrayList<>(size);
+        int[] positions = new int[runs.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> {
+            int order = comparator.compare(runs.get(a).get(positions[a]), runs.get(b).get(positions[b]));
+            return order != 0 ? order : Integer.compare(a, b);
+        });
+        for (int run = 0; run < runs.size(); run++) {
+            if (!runs.get(run).isEmpty()) {
+                heads.add(run);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int run = heads.poll();
+            merged.add(runs.get(run).get(positions[run]++));
+            if (positions[run] < runs.get(run).size()) {
+                heads.add(run);
+            }
+        }
+        return merged;
+    }
+
+    public boolean createBook(Book book) {
+        long key = book.getIsbnKey();
+        return key != IsbnKey.INVALID && shardFor(key).createBook(book);
+    }
+
+    public Book getBookByIsbn(String isbn) {
+        return shardFor(isbn).getBookByIsbn(isbn);
+    }
+
+    public boolean updateBook(String isbn, Map<String, String> updates) {
+        return shardFor(isbn).updateBook(isbn, updates);
+    }
+
+    public boolean deleteBook(String isbn) {
+        return shardFor(isbn).deleteBook(isbn);
+    }
+
+    public boolean borrowBook(String isbn, String borrowerName, Date returnDueDate) {
+        return shardFor(isbn).borrowBook(isbn, borrowerName, returnDueDate);
+    }
+
+    public Loan borrowCopy(String isbn, String borrowerName, Date returnDueDate) {
+        return shardFor(isbn).borrowCopy(isbn, borrowerName, returnDueDate);
+    }
+
+    public boolean returnBook(String isbn) {
+        return shardFor(isbn).returnBook(isbn);
+    }
+
+    public LibraryManager.Returned returnCopy(String isbn, int copyId) {
+        return shardFor(isbn).returnCopy(isbn, copyId);
+    }
+
+    public Hold placeHold(String isbn, String patronName) {
+        return shardFor(isbn).placeHold(isbn, patronName);
+    }
+
+    public boolean cancelHold(String isbn, String patronName) {
+        return shardFor(isbn).cancelHold(isbn, patronName);
+    }
+
+    public int getHoldCount(String isbn) {
+        return shardFor(isbn).getHoldCount(isbn);
+    }
+
+    public List<Hold> getHoldsFor(String patronName) {
+        return concat(scatter(shard -> shard.getHoldsFor(patronName)));
+    }
+
+    public List<Book> getBooksBorrowedBy(String borrowerName) {
+        return concat(scatter(shard -> shard.getBooksBorrowedBy(borrowerName)));
+    }
+
+    /**
+     * Same matching as {@link LibraryManager#searchBooks(String, String)}; results are grouped by shard.
+     */
+    public List<Book> searchBooks(String attribute, String searchValue) {
+        return concat(scatter(shard -> shard.searchBooks(attribute, searchValue)));
+    }
+
+    /**
+     * Lazy search over the shards one after another, see {@link LibraryManager#streamSearch(String, String)}.
+     */
+    public Stream<Book> streamSearch(String attribute, String searchValue) {
+        return Arrays.stream(shards).flatMap(shard -> shard.streamSearch(attribute, searchValue));
+    }
+
+    /**
+     * Same matching as {@link LibraryManager#fuzzySearch(String, String, int)}. Each shard ranks its own matches;
+     * the shards' lists are interleaved, so the closest matches of every shard come first.
+     */
+    public List<Book> fuzzySearch(String attribute, String query, int maxDistance) {
+        List<List<Book>> parts = scatter(shard -> shard.fuzzySearch(attribute, query, maxDistance));
+        List<Book> results = new ArrayList<>();
+        int longest = 0;
+        for (List<Book> part : parts) {
+            longest = Math.max(longest, part.size());
+        }
+        for (int rank = 0; rank < longest; rank++) {
+            for (List<Book> part : parts) {
+                if (rank < part.size()) {
+                    results.add(part.get(rank));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Same matching as {@link LibraryManager#filterBooks(Map)}; results are grouped by shard.
+     */
+    public List<Book> filterBooks(Map<String, String> criteria) {
+        return concat(scatter(shard -> shard.filterBooks(criteria)));
+    }
+
+    /**
+     * Lazy filter over the shards one after another, see {@link LibraryManager#streamFilter(Map)}.
+     */
+    public Stream<Book> streamFilter(Map<String, String> criteria) {
+        return Arrays.stream(shards).flatMap(shard -> shard.streamFilter(criteria));
+    }
+
+    public int deleteBooksIf(Predicate<Book> predicate) {
+        int deleted = 0;
+        for (int count : scatter(shard -> shard.deleteBooksIf(predicate))) {
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    public int updateBooksIf(Predicate<Book> predicate, Map<String, String> updates) {
+        int updated = 0;
+        for (int count : scatter(shard -> shard.updateBooksIf(predicate, updates))) {
+            updated += count;
+        }
+        return updated;
+    }
+
+    /**
+     * All books sorted by an attribute as in {@link LibraryManager#sortBooks(String, boolean)}. Each shard sorts a
+     * snapshot of its books in parallel and the sorted runs are merged; the shards' storage order is left alone.
+     * The books are not locked meanwhile, so every book's key is read once and the keys are sorted.
+     * Returns null for an unknown attribute.
+     */
+    public List<Book> getSortedBooks(String attribute, boolean ascending) {
+        Function<Book, LibraryManager.SortKey> sortKey = LibraryManager.sortKeyFor(attribute);
+        if (sortKey == null) {
+            return null;
+        }
+        Comparator<LibraryManager.SortKey> order = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        List<LibraryManager.SortKey> merged = mergeSorted(scatter(shard -> {
+            List<Book> books = shard.getBooks();
+            List<LibraryManager.SortKey> keys = new ArrayList<>(books.size());
+            for (Book book : books) {
+                keys.add(sortKey.apply(book));
+            }
+            keys.sort(order);
+            return keys;
+        }), order);
+
+        List<Book> sorted = new ArrayList<>(merged.size());
+        for (LibraryManager.SortKey key : merged) {
+            sorted.add(key.book);
+        }
+        return sorted;
+    }
+
+    /**
+     * Snapshot of all books, grouped by shard.
+     */
+    public ArrayList<Book> getBooks() {
+        return new ArrayList<>(concat(scatter(LibraryManager::getBooks)));
+    }
+
+    /**
+     * Replaces the catalog, handing each shard its part. Invalid and duplicate ISBNs are skipped as in
+     * {@link LibraryManager#setBooks(ArrayList)}.
+     */
+    public void setBooks(ArrayList<Book> books) {
+        List<ArrayList<Book>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>(books.size() / shards.length + 16));
+        }
+        for (Book book : books) {
+            if (book.getIsbnKey() != IsbnKey.INVALID) {
+                parts.get(shardIndex(book.getIsbnKey())).add(book);
+            }
+        }
+        List<CompletableFuture<Void>> loads = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            LibraryManager shard = shards[i];
+            ArrayList<Book> part = parts.get(i);
+            loads.add(CompletableFuture.runAsync(() -> shard.setBooks(part), SHARD_EXECUTOR));
+        }
+        for (CompletableFuture<Void> load : loads) {
+            load.join();
+        }
+    }
+
+    public int getTotalBooks() {
+        int total = 0;
+        for (int size : getShardSizes()) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Sum of the shards' versions; changes whenever any shard changes.
+     */
+    public long getVersion() {
+        long version = 0;
+        for (LibraryManager shard : shards) {
+            version += shard.getVersion();
+        }
+        return version;
+    }
+
+    public void addCatalogListener(CatalogListener listener) {
+        for (LibraryManager shard : shards) {
+            shard.addCatalogListener(listener);
+        }
+    }
+
+    public void addLoanEventListener(LoanEventListener listener) {
+        for (LibraryManager shard : shards) {
+            shard.addLoanEventListener(listener);
+        }
+    }
+
+    /**
+     * Borrowed books with a copy whose due date has passed, most overdue first across all shards.
+     */
+    public List<Book> getOverdueBooks() {
+        return LibraryManager.toBooks(mergeSorted(scatter(LibraryManager::getOverdueLoans),
+                Comparator.comparing(Loan::getDueDate)));
+    }
+
+    /**
+     * The n borrowers with the most books out over all shards. A patron can have books in several shards,
+     * so the full counts are added up before ranking. Names match the way each shard matches them (trimmed,
+     * ignoring case); the spelling seen first is the one shown.
+     */
+    public Map<String, Long> getTopBorrowers(int n) {
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, String> displayNames = new HashMap<>();
+        for (Map<String, Long> counts : scatter(shard -> shard.getTopBorrowers(Integer.MAX_VALUE))) {
+            counts.forEach((name, count) -> {
+                String key = name.trim().toLowerCase(Locale.ROOT);
+                displayNames.putIfAbsent(key, name);
+                totals.merge(key, count, Long::sum);
+            });
+        }
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(totals.entrySet());
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : ranked) {
+            if (top.size() == n) {
+                break;
+            }
+            top.put(displayNames.get(entry.getKey()), entry.getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Search cache figures summed over the shards, with the hit rate of all lookups.
+     */
+    public Map<String, Object> getQueryCacheStats() {
+        Map<String, Object> total = new LinkedHashMap<>();
+        for (Map<String, Object> part : scatter(LibraryManager::getQueryCacheStats)) {
+            part.forEach((name, value) -> {
+                if (value instanceof Integer) {
+                    total.merge(name, value, (a, b) -> (Integer) a + (Integer) b);
+                } else if (value instanceof Long) {
+                    total.merge(name, value, (a, b) -> (Long) a + (Long) b);
+                }
+            });
+        }
+        long hits = ((Number) total.getOrDefault("hits", 0L)).longValue();
+        long lookups = hits + ((Number) total.getOrDefault("misses", 0L)).longValue();
+        total.put("hitRate", lookups == 0 ? 0.0 : hits / (double) lookups);
+        return total;
+    }
+
+    /**
+     * Same keys as {@link LibraryManager#getLibraryStats()}, summed over the shards.
+     */
+    public Map<String, Object> getLibraryStats() {
+        return mergeBasicStats(scatter(LibraryManager::getLibraryStats));
+    }
+
+    /**
+     * Same keys as {@link LibraryManager#getAdvancedLibraryStats(LibraryManager)}. Each shard computes its part in
+     * parallel; oldest and newest book are compared, averages weighted by the shards' book and return counts.
+     */
+    public Map<String, Object> getAdvancedLibraryStats() {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusDays(29);
+        List<Map<String, Object>> parts = scatter(shard -> {
+            Map<String, Object> stats = shard.getAdvancedLibraryStats(shard);
+            stats.put("timedReturns", shard.getLoanHistory().countTimedReturns(from, today));
+            return stats;
+        });
+        Map<String, Object> stats = mergeBasicStats(parts);
+
+        Book oldest = null;
+        Book newest = null;
+        double yearSum = 0;
+        long loans = 0;
+        double loanDaysSum = 0;
+        long returns = 0;
+        for (Map<String, Object> part : parts) {
+            Book partOldest = (Book) part.get("oldestBook");
+            if (partOldest != null && (oldest == null || partOldest.getPublicationYear() < oldest.getPublicationYear())) {
+                oldest = partOldest;
+            }
+            Book partNewest = (Book) part.get("newestBook");
+            if (partNewest != null && (newest == null || partNewest.getPublicationYear() > newest.getPublicationYear())) {
+                newest = partNewest;
+            }
+            yearSum += (Double) part.get("averagePublicationYear") * (Integer) part.get("totalBooks");
+            loans += (Long) part.get("loansLast30Days");
+            long partReturns = (Long) part.get("timedReturns");
+            loanDaysSum += (Double) part.get("averageLoanDays") * partReturns;
+            returns += partReturns;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Genre, Long> genres = (Map<Genre, Long>) stats.get("genreDistribution");
+        stats.put("mostPopularGenre", genres.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null));
+        int totalBooks = (Integer) stats.get("totalBooks");
+        stats.put("oldestBook", oldest);
+        stats.put("newestBook", newest);
+        stats.put("averagePublicationYear", totalBooks == 0 ? 0.0 : yearSum / totalBooks);
+        stats.put("overdueBooks", getOverdueBooks());
+        stats.put("topBorrowers", getTopBorrowers(5));
+        stats.put("loansLast30Days", loans);
+        stats.put("averageLoanDays", returns == 0 ? 0.0 : loanDaysSum / returns);
+        return stats;
+    }
+
+    /**
+     * {@link #getAdvancedLibraryStats()} without blocking the caller, cached until any shard changes, as
+     * {@link LibraryManager#getAdvancedLibraryStatsAsync()} does for one catalog. A failed computation is not
+     * shared, the next call starts a new one.
+     */
+    public synchronized CompletableFuture<Map<String, Object>> getAdvancedLibraryStatsAsync() {
+        long current = getVersion();
+        if (cachedStats != null && cachedStatsVersion == current) {
+            Map<String, Object> stats = new HashMap<>(cachedStats);
+            stats.put("overdueBooks", getOverdueBooks());
+            return CompletableFuture.completedFuture(Collections.unmodifiableMap(stats));
+        }
+        if (pendingStats != null && pendingStatsVersion == current && !pendingStats.isCompletedExceptionally()) {
+            return pendingStats;
+        }
+
+        // not on the shard pool: the computation waits for shard tasks and must not hold one of its threads
+        CompletableFuture<Map<String, Object>> future = CompletableFuture.supplyAsync(() -> {
+            Map<String, Object> stats = Collections.unmodifiableMap(getAdvancedLibraryStats());
+            statsComputed(current, stats);
+            return stats;
+        }, LibraryManager.STATS_EXECUTOR);
+        pendingStatsVersion = current;
+        pendingStats = future;
+        future.whenComplete((stats, error) -> {
+            if (error != null) {
+                forgetPendingStats(future);
+            }
+        });
+        return future;
+    }
+
+    private synchronized void statsComputed(long version, Map<String, Object> stats) {
+        if (version > cachedStatsVersion) {
+            cachedStats = stats;
+            cachedStatsVersion = version;
+        }
+    }
+
+    private synchronized void forgetPendingStats(CompletableFuture<Map<String, Object>> failed) {
+        if (pendingStats == failed) {
+            pendingStats = null;
+            pendingStatsVersion = -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> mergeBasicStats(List<Map<String, Object>> parts) {
+        int totalBooks = 0;
+        long availableBooks = 0;
+        long borrowedBooks = 0;
+        long totalCopies = 0;
+        long copiesOnLoan = 0;
+        Map<Genre, Long> genres = new HashMap<>();
+        Map<String, Long> publishers = new HashMap<>();
+        for (Map<String, Object> part : parts) {
+            totalBooks += (Integer) part.get("totalBooks");
+            availableBooks += (Long) part.get("availableBooks");
+            borrowedBooks += (Long) part.get("borrowedBooks");
+            totalCopies += (Long) part.get("totalCopies");
+            copiesOnLoan += (Long) part.get("copiesOnLoan");
+            ((Map<Genre, Long>) part.get("genreDistribution")).forEach((genre, count) -> genres.merge(genre, count, Long::sum));
+            ((Map<String, Long>) part.get("publisherDistribution")).forEach((name, count) -> publishers.merge(name, count, Long::sum));
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalBooks", totalBooks);
+        stats.put("availableBooks", availableBooks);
+        stats.put("borrowedBooks", borrowedBooks);
+        stats.put("totalCopies", totalCopies);
+        stats.put("copiesOnLoan", copiesOnLoan);
+        stats.put("genreDistribution", genres);
+        stats.put("publisherDistribution", publishers);
+        return stats;
+    }
+}
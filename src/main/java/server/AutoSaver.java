@@ -0,0 +1,55 @@
+package server;
+
+import managers.Catalog;
+import utils.FileHandler;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the catalog every few seconds while it keeps changing, for the servers which have no "Save &amp; Exit".
+ * A save only happens when the catalog version moved since the last one. The interval is set with
+ * {@code -Dlibrary.server.saveSeconds} (default 5, 0 to only save on stop).
+ */
+class AutoSaver {
+    private final Catalog manager;
+    private final long saveSeconds = Long.getLong("library.server.saveSeconds", 5);
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-server-save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long savedVersion;
+
+    AutoSaver(Catalog manager) {
+        this.manager = manager;
+    }
+
+    void start() {
+        savedVersion = manager.getVersion();
+        if (saveSeconds > 0) {
+            saver.scheduleWithFixedDelay(this::saveIfChanged, saveSeconds, saveSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic saves and saves pending changes one last time.
+     */
+    void stop() {
+        saver.shutdown();
+        try {
+            saver.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveIfChanged();
+    }
+
+    private synchronized void saveIfChanged() {
+        long version = manager.getVersion();
+        if (version != savedVersion && FileHandler.saveToFile(manager)) {
+            savedVersion = version;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package server;
+
+import entities.Book;
+import entities.Loan;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer for the API responses: maps, collections, strings, numbers, booleans, enums, dates
+ * (as {@code yyyy-MM-dd}), books and loans. Copies are numbered from 1 as in the console.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static String write(Object value) {
+        StringBuilder out = new StringBuilder(256);
+        append(out, value);
+        return out.toString();
+    }
+
+    static void append(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            string(out, (String) value);
+        } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Date) {
+            string(out, day((Date) value));
+        } else if (value instanceof Book) {
+            book(out, (Book) value);
+        } else if (value instanceof Loan) {
+            loan(out, (Loan) value, true);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                string(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                append(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                append(out, item);
+            }
+            out.append(']');
+        } else {
+            string(out, value.toString());
+        }
+    }
+
+    private static void book(StringBuilder out, Book book) {
+        out.append("{\"isbn\":");
+        string(out, book.getIsbn());
+        out.append(",\"title\":");
+        string(out, book.getTitle());
+        out.append(",\"author\":");
+        string(out, book.getAuthor());
+        out.append(",\"publisher\":");
+        string(out, book.getPublisher());
+        out.append(",\"year\":").append(book.getPublicationYear());
+        out.append(",\"genre\":");
+        append(out, book.getGenre());
+        out.append(",\"totalCopies\":").append(book.getTotalCopies());
+        out.append(",\"availableCopies\":").append(book.getAvailableCopies());
+        out.append(",\"borrowCount\":").append(book.getBorrowCount());
+        out.append(",\"loans\":[");
+        boolean first = true;
+        for (Loan loan : book.getLoans()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            loan(out, loan, false);
+        }
+        out.append("]}");
+    }
+
+    private static void loan(StringBuilder out, Loan loan, boolean withBook) {
+        out.append('{');
+        if (withBook) {
+            out.append("\"isbn\":");
+            string(out, loan.getBook().getIsbn());
+            out.append(",\"title\":");
+            string(out, loan.getBook().getTitle());
+            out.append(',');
+        }
+        out.append("\"copy\":").append(loan.getCopyId() + 1);
+        out.append(",\"borrower\":");
+        string(out, loan.getBorrowerName());
+        out.append(",\"borrowDate\":");
+        append(out, loan.getBorrowDate());
+        out.append(",\"dueDate\":");
+        append(out, loan.getDueDate());
+        out.append('}');
+    }
+
+    private static String day(Date date) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault()).toString();
+    }
+
+    private static void string(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
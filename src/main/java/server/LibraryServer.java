@@ -0,0 +1,336 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import entities.Book;
+import entities.Loan;
+import managers.Catalog;
+import managers.LibraryManager;
+import utils.Validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Embedded HTTP/JSON API for branch terminals and self-checkout kiosks.
+ * <p>
+ * Built on the JDK's {@code com.sun.net.httpserver}; its selector thread accepts and parses connections and
+ * every request is then handled on its own virtual thread, so thousands of concurrent clients cost a few
+ * kilobytes each and a handler blocked on the catalog lock does not hold up anyone else.
+ * <pre>
+ * GET  /books?q=&amp;field=all&amp;fuzzy=0&amp;offset=0&amp;limit=50   search; any other parameter is a filter, e.g. genre=FICTION&amp;year=&gt;2000
+ * GET  /books/{isbn}                                  one book with its loans
+ * POST /books/{isbn}/borrow?borrower=&amp;days=14        lend a copy (or due=yyyy-MM-dd), 409 if none is free
+ * POST /books/{isbn}/return?copy=n                    return copy n, or the lowest copy that is out
+ * GET  /stats                                         library statistics
+ * </pre>
+ * Parameters can also be sent as a form body. Changes are saved every few seconds when the catalog changed
+ * ({@code -Dlibrary.server.saveSeconds}, default 5, 0 to disable) and once more on {@link #stop()}.
+ */
+public class LibraryServer {
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int BACKLOG = 4096;
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int DEFAULT_LOAN_DAYS = 14;
+    private static final Set<String> SEARCH_PARAMETERS = Set.of("q", "field", "fuzzy", "offset", "limit");
+
+    private final Catalog manager;
+    private final HttpServer http;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final AutoSaver saver;
+
+    public LibraryServer(Catalog manager, int port) throws IOException {
+        this.manager = manager;
+        this.saver = new AutoSaver(manager);
+        this.http = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        http.setExecutor(handlers);
+        http.createContext("/books", this::handleBooks);
+        http.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        http.start();
+        saver.start();
+        System.out.println("Library API listening on http://localhost:" + getPort() + "/books");
+    }
+
+    /**
+     * Stops accepting requests, gives running ones a second to finish and saves pending changes.
+     */
+    public void stop() {
+        http.stop(1);
+        handlers.shutdown();
+        saver.stop();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    private void handleBooks(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // "", "books", isbn, action
+            if (path.length > 4 || (path.length > 1 && !path[1].equals("books"))) {
+                send(exchange, 404, error("No such resource"));
+                return;
+            }
+            Map<String, String> params = parameters(exchange);
+
+            if (path.length <= 2) {
+                if (allow(exchange, "GET")) {
+                    listBooks(exchange, params);
+                }
+            } else if (path.length == 3) {
+                if (allow(exchange, "GET")) {
+                    getBook(exchange, path[2]);
+                }
+            } else if (path[3].equals("borrow")) {
+                if (allow(exchange, "POST")) {
+                    borrow(exchange, path[2], params);
+                }
+            } else if (path[3].equals("return")) {
+                if (allow(exchange, "POST")) {
+                    returnCopy(exchange, path[2], params);
+                }
+            } else {
+                send(exchange, 404, error("Unknown action: " + path[3]));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            System.err.println("API request failed: " + exchange.getRequestURI() + ": " + e);
+            send(exchange, 500, error("Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listBooks(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String query = params.get("q");
+        String field = params.getOrDefault("field", "all");
+        int fuzzy = intParameter(params, "fuzzy", 0);
+        int offset = Math.max(0, intParameter(params, "offset", 0));
+        int limit = Math.min(MAX_LIMIT, Math.max(0, intParameter(params, "limit", DEFAULT_LIMIT)));
+
+        Map<String, String> criteria = new HashMap<>();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (!SEARCH_PARAMETERS.contains(entry.getKey())) {
+                criteria.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        List<Book> results;
+        if (query != null && !query.isEmpty()) {
+            results = new ArrayList<>(fuzzy > 0 ? manager.fuzzySearch(field, query, fuzzy) : manager.searchBooks(field, query));
+            if (!criteria.isEmpty()) {
+                Set<Book> filtered = Collections.newSetFromMap(new IdentityHashMap<>());
+                filtered.addAll(manager.filterBooks(criteria));
+                results.removeIf(book -> !filtered.contains(book));
+            }
+        } else if (!criteria.isEmpty()) {
+            results = manager.filterBooks(criteria);
+        } else {
+            results = manager.getBooks();
+        }
+
+        int from = Math.min(offset, results.size());
+        int to = Math.min(results.size(), from + limit);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("total", results.size());
+        body.put("offset", from);
+        body.put("count", to - from);
+        body.put("books", results.subList(from, to));
+        send(exchange, 200, body);
+    }
+
+    private void getBook(HttpExchange exchange, String isbn) throws IOException {
+        Book book = manager.getBookByIsbn(isbn);
+        if (book == null) {
+            send(exchange, 404, error("Book not found: " + isbn));
+        } else {
+            send(exchange, 200, book);
+        }
+    }
+
+    private void borrow(HttpExchange exchange, String isbn, Map<String, String> params) throws IOException {
+        String borrower = params.get("borrower");
+        if (borrower == null || borrower.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: borrower");
+        }
+        // same rule as the console; the name ends up in the saved catalog file
+        borrower = borrower.trim();
+        if (!Validator.isValidName(borrower)) {
+            throw new IllegalArgumentException(Validator.getErrorMessage("borrower"));
+        }
+        Date due = dueDate(params);
+
+        Loan loan = manager.borrowCopy(isbn, borrower, due);
+        if (loan != null) {
+            send(exchange, 201, loan);
+            return;
+        }
+        Book book = manager.getBookByIsbn(isbn);
+        if (book == null) {
+            send(exchange, 404, error("Book not found: " + isbn));
+            return;
+        }
+        Map<String, Object> body = error(book.isAvailable() ? "Copies are held for waiting patrons" : "No copy available");
+        body.put("holds", manager.getHoldCount(isbn));
+        send(exchange, 409, body);
+    }
+
+    private void returnCopy(HttpExchange exchange, String isbn, Map<String, String> params) throws IOException {
+        int copy = intParameter(params, "copy", 0);
+        LibraryManager.Returned returned = manager.returnCopy(isbn, copy - 1);
+        if (returned == null) {
+            Book book = manager.getBookByIsbn(isbn);
+            send(exchange, book == null ? 404 : 409,
+                    error(book == null ? "Book not found: " + isbn
+                            : copy > 0 ? "Copy " + copy + " is not on loan" : "No copy is on loan"));
+            return;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("returned", returned.getLoan());
+        // the copy may have gone straight to the next patron in line
+        body.put("heldFor", returned.getHeldFor());
+        send(exchange, 200, body);
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            if (!allow(exchange, "GET")) {
+                return;
+            }
+            Map<String, Object> stats = new LinkedHashMap<>(manager.getAdvancedLibraryStatsAsync().get(30, TimeUnit.SECONDS));
+            // book lists can be long, the ISBNs are enough here
+            Object overdue = stats.get("overdueBooks");
+            if (overdue instanceof List) {
+                List<String> isbns = new ArrayList<>();
+                for (Object book : (List<?>) overdue) {
+                    isbns.add(((Book) book).getIsbn());
+                }
+                stats.put("overdueBooks", isbns);
+            }
+            stats.put("queryCache", manager.getQueryCacheStats());
+            send(exchange, 200, stats);
+        } catch (TimeoutException e) {
+            send(exchange, 503, error("Statistics are still being computed"));
+        } catch (Exception e) {
+            System.err.println("API request failed: " + exchange.getRequestURI() + ": " + e);
+            send(exchange, 500, error("Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean allow(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equalsIgnoreCase(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", method);
+        send(exchange, 405, error("Use " + method));
+        return false;
+    }
+
+    private static Date dueDate(Map<String, String> params) {
+        LocalDate day;
+        if (params.containsKey("due")) {
+            try {
+                day = LocalDate.parse(params.get("due"));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid due date, expected yyyy-MM-dd: " + params.get("due"));
+            }
+        } else {
+            int days = intParameter(params, "days", DEFAULT_LOAN_DAYS);
+            if (days < 1) {
+                throw new IllegalArgumentException("days must be at least 1");
+            }
+            day = LocalDate.now().plusDays(days);
+        }
+        if (day.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Due date is in the past: " + day);
+        }
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static int intParameter(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Query string parameters, plus the form body of a POST. The body wins on duplicates.
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        decode(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                decode(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void decode(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8).toLowerCase(),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", message);
+        return body;
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput benchmark for {@link LineProtocolServer}.
+ * <p>
+ * Opens a number of connections and, for each pipeline depth, keeps them busy for a fixed time: a connection
+ * writes {@code depth} requests, flushes once and then reads the {@code depth} responses. The mix is what
+ * gates and sorters send: 89% lookups, 5% borrows, 5% returns of copies borrowed on the same connection and
+ * 1% searches. Depth 1 is the plain request/response baseline, so the table shows what pipelining buys.
+ * <p>
+ * Usage: {@code LineProtocolBenchmark [host:port] [connections] [depths] [seconds]},
+ * defaults {@code localhost:7070 16 1,16,128 5}, or {@code mvn -Pline-bench compile exec:exec}.
+ */
+public class LineProtocolBenchmark {
+    private final String host;
+    private final int port;
+    private final List<String> isbns = new ArrayList<>();
+    private final List<String> words = new ArrayList<>();
+
+    public LineProtocolBenchmark(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String address = args.length > 0 ? args[0] : "localhost:" + LineProtocolServer.DEFAULT_PORT;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        String[] depths = (args.length > 2 ? args[2] : "1,16,128").split(",");
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        int colon = address.lastIndexOf(':');
+        LineProtocolBenchmark benchmark = colon < 0
+                ? new LineProtocolBenchmark(address, LineProtocolServer.DEFAULT_PORT)
+                : new LineProtocolBenchmark(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        benchmark.loadSample();
+
+        System.out.printf("%d connections, %d s per depth%n", connections, seconds);
+        System.out.printf("%8s %12s %12s %14s %14s %10s%n",
+                "depth", "requests", "req/s", "mean batch ms", "p99 batch ms", "speedup");
+        double baseline = 0;
+        for (String depth : depths) {
+            double rate = benchmark.run(connections, Integer.parseInt(depth.trim()), seconds, baseline);
+            if (baseline == 0) {
+                baseline = rate;
+            }
+        }
+    }
+
+    /**
+     * Takes ISBNs and title words from the first page of an empty search.
+     */
+    private void loadSample() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            out.write("SEARCH 1000\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String header = readLine(in);
+            int count = Integer.parseInt(header.substring(3).trim());
+            for (int i = 0; i < count; i++) {
+                String[] fields = readLine(in).split("\\|");
+                isbns.add(fields[0]);
+                for (String word : fields[1].split("\\s+")) {
+                    if (word.length() > 3) {
+                        words.add(word);
+                    }
+                }
+            }
+        }
+        if (isbns.isEmpty()) {
+            throw new IllegalStateException("The catalog at " + host + ":" + port + " is empty");
+        }
+        if (words.isEmpty()) {
+            words.add(isbns.get(0));
+        }
+    }
+
+    /**
+     * Runs one depth and prints its line. The speedup is relative to the baseline rate, the first depth run.
+     */
+    private double run(int connections, int depth, int seconds, double baseline) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                Random random = new Random(i * 31L + depth);
+                results.add(pool.submit(() -> connection(random, depth, deadline)));
+            }
+            long requests = 0;
+            long[] batches = new long[0];
+            for (Future<long[]> result : results) {
+                long[] timings = result.get();
+                requests += timings[0];
+                int previous = batches.length;
+                batches = Arrays.copyOf(batches, previous + timings.length - 1);
+                System.arraycopy(timings, 1, batches, previous, timings.length - 1);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(batches);
+            double mean = Arrays.stream(batches).average().orElse(0) / 1e6;
+            double p99 = batches.length == 0 ? 0 : batches[Math.max(0, (int) Math.ceil(batches.length * 0.99) - 1)] / 1e6;
+            double rate = requests / elapsed;
+            System.out.printf("%8d %12d %12.0f %14.3f %14.3f %9.1fx%n",
+                    depth, requests, rate, mean, p99, baseline == 0 ? 1.0 : rate / baseline);
+            return rate;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Drives one connection until the deadline. Returns the number of requests followed by every batch's
+     * round trip time in nanoseconds.
+     */
+    private long[] connection(Random random, int depth, long deadline) throws IOException {
+        long[] timings = new long[1024];
+        int batches = 0;
+        long requests = 0;
+        String patron = "Gate_" + LoadTestClient.letters(random.nextInt(1_000_000));
+        Deque<String> borrowed = new ArrayDeque<>();
+        String[] sent = new String[depth];
+        StringBuilder batch = new StringBuilder();
+
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+
+            while (System.nanoTime() < deadline) {
+                batch.setLength(0);
+                for (int i = 0; i < depth; i++) {
+                    int roll = random.nextInt(100);
+                    String isbn = isbns.get(random.nextInt(isbns.size()));
+                    if (roll < 5 && !borrowed.isEmpty()) {
+                        sent[i] = "RETURN " + borrowed.poll();
+                    } else if (roll < 10) {
+                        sent[i] = "BORROW " + isbn + " 14 " + patron;
+                    } else if (roll < 11) {
+                        sent[i] = "SEARCH 5 " + words.get(random.nextInt(words.size()));
+                    } else {
+                        sent[i] = "GET " + isbn;
+                    }
+                    batch.append(sent[i]).append('\n');
+                }
+
+                long started = System.nanoTime();
+                out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                for (int i = 0; i < depth; i++) {
+                    String response = readLine(in);
+                    if (sent[i].startsWith("SEARCH") && response.startsWith("OK ")) {
+                        int lines = Integer.parseInt(response.substring(3).trim());
+                        for (int j = 0; j < lines; j++) {
+                            readLine(in);
+                        }
+                    } else if (sent[i].startsWith("BORROW") && response.startsWith("OK ")) {
+                        String isbn = sent[i].split(" ")[1];
+                        borrowed.add(isbn + " " + response.split(" ")[1]);
+                    }
+                }
+                if (batches + 1 == timings.length) {
+                    timings = Arrays.copyOf(timings, timings.length * 2);
+                }
+                timings[++batches] = System.nanoTime() - started;
+                requests += depth;
+            }
+            out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        timings[0] = requests;
+        return Arrays.copyOf(timings, batches + 1);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            line.write(c);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,460 @@
+package server;
+
+import entities.Book;
+import entities.Loan;
+import managers.Catalog;
+import managers.LibraryManager;
+import utils.Validator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Compact line protocol for machine-to-machine traffic such as sorting machines and RFID gates.
+ * <p>
+ * Every request is one line, every response starts with {@code OK} or {@code ERR}:
+ * <pre>
+ * GET isbn                      OK isbn|title|author|year|genre|available/total
+ * BORROW isbn days borrower     OK copy due-date            (ERR unavailable, ERR held for holds,
+ *                                                           ERR invalid borrower unless LastName_FirstName)
+ * RETURN isbn [copy]            OK copy, or OK copy HELD borrower when it went to a waiting patron
+ * SEARCH limit [words]          OK n, followed by n lines in the GET format (title, author, ... contain words)
+ * PING                          OK
+ * QUIT                          closes the connection
+ * </pre>
+ * Clients may pipeline: send many requests without waiting, responses come back in request order.
+ * <p>
+ * Connections are spread over a few selector loops (one per core, {@code -Dlibrary.lines.loops}). A loop reads
+ * whatever a connection sent into a shared direct buffer, runs every complete request in it and writes all
+ * the responses back in one go, so a pipelined batch costs one read and one write system call. Requests run
+ * on the loop thread, which keeps responses in order without any handoff; a slow request (a search over a
+ * large catalog) delays the other connections of the same loop. A connection whose responses cannot be
+ * written yet is not read from until they are, so a client that does not read cannot make the server buffer
+ * without bound.
+ */
+public class LineProtocolServer {
+    public static final int DEFAULT_PORT = 7070;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE = 8 * 1024;
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    private final Catalog manager;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final AutoSaver saver;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public LineProtocolServer(Catalog manager, int port) throws IOException {
+        this(manager, port, Integer.getInteger("library.lines.loops", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public LineProtocolServer(Catalog manager, int port, int loopCount) throws IOException {
+        this.manager = manager;
+        this.saver = new AutoSaver(manager);
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    public void start() {
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptor = new Thread(this::accept, "line-server-accept");
+        acceptor.start();
+        saver.start();
+        System.out.println("Line protocol listening on port " + getPort() + " (" + loops.length + " loops)");
+    }
+
+    /**
+     * Closes the listening socket and every connection, then saves pending changes.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the server socket: " + e.getMessage());
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            for (EventLoop loop : loops) {
+                loop.thread.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saver.stop();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next++ % loops.length].add(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one request and appends its response to {@code out}. Returns false if the connection should close.
+     */
+    private boolean execute(String line, StringBuilder out) {
+        String[] parts = line.trim().split("\\s+", 2);
+        String command = parts[0].toUpperCase(Locale.ROOT);
+        String args = parts.length > 1 ? parts[1] : "";
+        try {
+            switch (command) {
+                case "GET":
+                    Book book = manager.getBookByIsbn(args.trim());
+                    if (book == null) {
+                        out.append("ERR not found\n");
+                    } else {
+                        appendBook(out.append("OK "), book);
+                    }
+                    break;
+                case "BORROW":
+                    borrow(args, out);
+                    break;
+                case "RETURN":
+                    returnCopy(args, out);
+                    break;
+                case "SEARCH":
+                    search(args, out);
+                    break;
+                case "PING":
+                    out.append("OK\n");
+                    break;
+                case "QUIT":
+                    out.append("OK bye\n");
+                    return false;
+                case "":
+                    out.append("ERR empty request\n");
+                    break;
+                default:
+                    out.append("ERR unknown command ").append(command).append('\n');
+            }
+        } catch (IllegalArgumentException e) {
+            out.append("ERR ").append(e.getMessage()).append('\n');
+        } catch (RuntimeException e) {
+            System.err.println("Line request failed: " + line + ": " + e);
+            out.append("ERR internal error\n");
+        }
+        return true;
+    }
+
+    private void borrow(String args, StringBuilder out) {
+        String[] parts = args.split("\\s+", 3);
+        if (parts.length < 3 || parts[2].trim().isEmpty()) {
+            throw new IllegalArgumentException("usage: BORROW isbn days borrower");
+        }
+        int days = parseInt(parts[1], "days");
+        if (days < 1) {
+            throw new IllegalArgumentException("days must be at least 1");
+        }
+        // the name is saved with the catalog, so it has to pass the same check as at the console
+        String borrower = parts[2].trim();
+        if (!Validator.isValidName(borrower)) {
+            out.append("ERR invalid borrower\n");
+            return;
+        }
+        LocalDate dueDay = LocalDate.now().plusDays(days);
+        Date due = Date.from(dueDay.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        Loan loan = manager.borrowCopy(parts[0], borrower, due);
+        if (loan != null) {
+            out.append("OK ").append(loan.getCopyId() + 1).append(' ').append(dueDay).append('\n');
+            return;
+        }
+        Book book = manager.getBookByIsbn(parts[0]);
+        out.append(book == null ? "ERR not found\n" : book.isAvailable() ? "ERR held\n" : "ERR unavailable\n");
+    }
+
+    private void returnCopy(String args, StringBuilder out) {
+        String[] parts = args.trim().split("\\s+");
+        int copy = parts.length > 1 ? parseInt(parts[1], "copy") : 0;
+        LibraryManager.Returned returned = manager.returnCopy(parts[0], copy - 1);
+        if (returned == null) {
+            out.append(manager.getBookByIsbn(parts[0]) == null ? "ERR not found\n" : "ERR not on loan\n");
+            return;
+        }
+        out.append("OK ").append(returned.getLoan().getCopyId() + 1);
+        Loan next = returned.getHeldFor();
+        if (next != null) {
+            out.append(" HELD ").append(next.getBorrowerName());
+        }
+        out.append('\n');
+    }
+
+    private void search(String args, StringBuilder out) {
+        String[] parts = args.trim().split("\\s+", 2);
+        if (parts[0].isEmpty()) {
+            throw new IllegalArgumentException("usage: SEARCH limit [words]");
+        }
+        int limit = Math.min(MAX_SEARCH_RESULTS, Math.max(0, parseInt(parts[0], "limit")));
+        // only scans until the page is full, the event loop has other connections to serve
+        List<Book> books = manager.streamSearch("all", parts.length > 1 ? parts[1].trim() : "")
+                .limit(limit)
+                .collect(Collectors.toList());
+        int count = books.size();
+        out.append("OK ").append(count).append('\n');
+        for (int i = 0; i < count; i++) {
+            appendBook(out, books.get(i));
+        }
+    }
+
+    private static void appendBook(StringBuilder out, Book book) {
+        out.append(book.getIsbn()).append('|')
+                .append(book.getTitle()).append('|')
+                .append(book.getAuthor()).append('|')
+                .append(book.getPublicationYear()).append('|')
+                .append(book.getGenre()).append('|')
+                .append(book.getAvailableCopies()).append('/').append(book.getTotalCopies()).append('\n');
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * One selector thread and the connections it owns. The direct buffers are shared by all of them.
+     */
+    private class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final StringBuilder responses = new StringBuilder(BUFFER_SIZE);
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "line-server-loop-" + index);
+        }
+
+        void add(SocketChannel channel) {
+            added.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    register();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                flush(connection);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                        } catch (IOException e) {
+                            close(connection);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Line server loop failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close((Connection) key.attachment());
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // shutting down anyway
+                }
+            }
+        }
+
+        private void register() {
+            SocketChannel channel;
+            while ((channel = added.poll()) != null) {
+                try {
+                    Connection connection = new Connection(channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    // the client is already gone
+                }
+            }
+        }
+
+        /**
+         * Reads what the client sent, runs every complete line and flushes all responses together.
+         */
+        private void read(Connection connection) throws IOException {
+            readBuffer.clear();
+            int read = connection.channel.read(readBuffer);
+            if (read < 0) {
+                close(connection);
+                return;
+            }
+            readBuffer.flip();
+
+            responses.setLength(0);
+            while (readBuffer.hasRemaining() && !connection.closing) {
+                int start = readBuffer.position();
+                int end = start;
+                while (end < readBuffer.limit() && readBuffer.get(end) != '\n') {
+                    end++;
+                }
+                int length = end - start;
+                if (connection.partialLength + length > MAX_LINE) {
+                    responses.append("ERR line too long\n");
+                    connection.closing = true;
+                    break;
+                }
+                connection.appendPartial(readBuffer, length);
+                if (end == readBuffer.limit()) {
+                    break;
+                }
+                readBuffer.get(); // the newline
+                String line = connection.takeLine();
+                if (!execute(line, responses)) {
+                    connection.closing = true;
+                }
+            }
+
+            if (responses.length() > 0) {
+                connection.queue(responses.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            flush(connection);
+        }
+
+        /**
+         * Writes queued responses. Whatever the socket does not take stays queued, and the connection waits for
+         * OP_WRITE instead of reading more requests.
+         */
+        private void flush(Connection connection) throws IOException {
+            while (connection.outStart < connection.outEnd) {
+                writeBuffer.clear();
+                int chunk = Math.min(writeBuffer.capacity(), connection.outEnd - connection.outStart);
+                writeBuffer.put(connection.out, connection.outStart, chunk);
+                writeBuffer.flip();
+                int written = connection.channel.write(writeBuffer);
+                connection.outStart += written;
+                if (written < chunk) {
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            connection.outStart = 0;
+            connection.outEnd = 0;
+            if (connection.closing) {
+                close(connection);
+            } else {
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void close(Connection connection) {
+            if (connection == null) {
+                return;
+            }
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException ignored) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * Per connection state: the unfinished request line and the responses not yet written.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        byte[] partial = new byte[128];
+        int partialLength;
+        byte[] out = new byte[256];
+        int outStart;
+        int outEnd;
+        boolean closing;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void appendPartial(ByteBuffer buffer, int length) {
+            if (partialLength + length > partial.length) {
+                partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+            }
+            buffer.get(partial, partialLength, length);
+            partialLength += length;
+        }
+
+        String takeLine() {
+            int length = partialLength;
+            if (length > 0 && partial[length - 1] == '\r') {
+                length--;
+            }
+            partialLength = 0;
+            return new String(partial, 0, length, StandardCharsets.UTF_8);
+        }
+
+        void queue(byte[] bytes) {
+            if (outStart > 0) {
+                System.arraycopy(out, outStart, out, 0, outEnd - outStart);
+                outEnd -= outStart;
+                outStart = 0;
+            }
+            if (outEnd + bytes.length > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, outEnd + bytes.length));
+            }
+            System.arraycopy(bytes, 0, out, outEnd, bytes.length);
+            outEnd += bytes.length;
+        }
+    }
+}
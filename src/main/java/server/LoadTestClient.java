@@ -0,0 +1,246 @@
+package server;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for {@link LibraryServer}.
+ * <p>
+ * Starts one virtual thread per simulated terminal, so there are about as many open connections as terminals,
+ * and keeps them all busy for a fixed time with a kiosk-like mix: 60% searches, 20% lookups by ISBN, 10% borrows
+ * and 10% returns of copies the same terminal borrowed. Prints throughput and latency percentiles per operation.
+ * <p>
+ * Usage: {@code LoadTestClient [url] [clients] [seconds]}, defaults {@code http://localhost:8080 1000 20},
+ * or {@code mvn -Pload-test compile exec:exec -Dload.clients=2000}.
+ */
+public class LoadTestClient {
+    private static final String[] OPERATIONS = {"search", "get", "borrow", "return"};
+    private static final Pattern ISBN = Pattern.compile("\"isbn\":\"([^\"]+)\"");
+    private static final Pattern TITLE = Pattern.compile("\"title\":\"([^\"]+)\"");
+    private static final Pattern COPY = Pattern.compile("\"copy\":(\\d+)");
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final List<String> isbns = new ArrayList<>();
+    private final List<String> words = new ArrayList<>();
+    private final Map<String, AtomicLong> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+
+    public LoadTestClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:" + LibraryServer.DEFAULT_PORT;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        LoadTestClient test = new LoadTestClient(url);
+        test.loadSample();
+        test.run(clients, seconds);
+    }
+
+    /**
+     * Fetches a page of books to draw ISBNs and search words from.
+     */
+    private void loadSample() throws Exception {
+        String body = send(HttpRequest.newBuilder(URI.create(baseUrl + "/books?limit=1000")).GET().build(), "sample").body();
+        Matcher isbn = ISBN.matcher(body);
+        while (isbn.find()) {
+            isbns.add(isbn.group(1));
+        }
+        Matcher title = TITLE.matcher(body);
+        while (title.find()) {
+            for (String word : title.group(1).split("\\s+")) {
+                if (word.length() > 3) {
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+        if (isbns.isEmpty()) {
+            throw new IllegalStateException("The catalog at " + baseUrl + " is empty");
+        }
+        if (words.isEmpty()) {
+            words.add(isbns.get(0));
+        }
+        System.out.println("Sampled " + isbns.size() + " books from " + baseUrl);
+    }
+
+    private void run(int clients, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<Latencies[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService terminals = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                long seed = i;
+                results.add(terminals.submit(() -> terminal(new Random(seed), deadline)));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Latencies[] merged = new Latencies[OPERATIONS.length];
+        for (int op = 0; op < merged.length; op++) {
+            merged[op] = new Latencies();
+        }
+        for (Future<Latencies[]> result : results) {
+            Latencies[] latencies = result.get();
+            for (int op = 0; op < merged.length; op++) {
+                merged[op].addAll(latencies[op]);
+            }
+        }
+
+        long total = 0;
+        System.out.printf("%n%d clients, %.1f s%n", clients, elapsed);
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s%n", "op", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (int op = 0; op < merged.length; op++) {
+            Latencies latencies = merged[op];
+            latencies.sort();
+            total += latencies.size;
+            System.out.printf("%-8s %10d %10.0f %10.2f %10.2f %10.2f %10.2f%n", OPERATIONS[op], latencies.size,
+                    latencies.size / elapsed, latencies.percentile(50), latencies.percentile(95),
+                    latencies.percentile(99), latencies.percentile(100));
+        }
+        System.out.printf("%-8s %10d %10.0f%n", "total", total, total / elapsed);
+        System.out.println("Responses by status: " + new TreeMap<>(statuses) + ", failed requests: " + failures.get());
+    }
+
+    /**
+     * Borrower names must be LastName_FirstName in letters only, so the terminal number is spelled in letters.
+     */
+    static String letters(int number) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('A' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return sb.toString();
+    }
+
+    private Latencies[] terminal(Random random, long deadline) {
+        Latencies[] latencies = new Latencies[OPERATIONS.length];
+        for (int op = 0; op < latencies.length; op++) {
+            latencies[op] = new Latencies();
+        }
+        String patron = "Terminal_" + letters(random.nextInt(1_000_000));
+        Deque<String[]> borrowed = new ArrayDeque<>();
+
+        while (System.nanoTime() < deadline) {
+            int roll = random.nextInt(100);
+            int op = roll < 60 ? 0 : roll < 80 ? 1 : roll < 90 ? 2 : 3;
+            if (op == 3 && borrowed.isEmpty()) {
+                op = 1;
+            }
+            String isbn = isbns.get(random.nextInt(isbns.size()));
+            HttpRequest request;
+            switch (op) {
+                case 0:
+                    request = get("/books?limit=20&q=" + encode(words.get(random.nextInt(words.size()))));
+                    break;
+                case 1:
+                    request = get("/books/" + isbn);
+                    break;
+                case 2:
+                    request = post("/books/" + isbn + "/borrow?borrower=" + encode(patron));
+                    break;
+                default:
+                    String[] loan = borrowed.poll();
+                    request = post("/books/" + loan[0] + "/return?copy=" + loan[1]);
+            }
+
+            long started = System.nanoTime();
+            try {
+                HttpResponse<String> response = send(request, OPERATIONS[op]);
+                latencies[op].add(System.nanoTime() - started);
+                if (op == 2 && response.statusCode() == 201) {
+                    Matcher copy = COPY.matcher(response.body());
+                    if (copy.find()) {
+                        borrowed.add(new String[]{isbn, copy.group(1)});
+                    }
+                }
+            } catch (Exception e) {
+                failures.incrementAndGet();
+            }
+        }
+        return latencies;
+    }
+
+    private HttpResponse<String> send(HttpRequest request, String operation) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        statuses.computeIfAbsent(operation + " " + response.statusCode(), key -> new AtomicLong()).incrementAndGet();
+        return response;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable array of latencies in nanoseconds.
+     */
+    private static class Latencies {
+        long[] values = new long[256];
+        int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        /**
+         * Percentile in milliseconds of the sorted values.
+         */
+        double percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p / 100.0 * size) - 1;
+            return values[Math.max(0, Math.min(size - 1, index))] / 1e6;
+        }
+    }
+}
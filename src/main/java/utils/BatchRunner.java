@@ -0,0 +1,475 @@
+package utils;
+
+import entities.Book;
+import entities.Loan;
+import entities.enums.Genre;
+import managers.Catalog;
+import managers.LibraryManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Runs a script of catalog commands without any prompts, for jobs like the nightly book drop returns or a
+ * mass re-genre. One command per line, arguments separated by '|', blank lines and '#' comments skipped:
+ * <pre>
+ * add isbn|title|author|publisher|year|genre[|copies]
+ * update isbn|field=value[|field=value...]
+ * update-where field=value[|...] -&gt; field=value[|...]      criteria as in Filter Books
+ * borrow isbn|borrower[|days]                               default 14 days
+ * return isbn[|copy]                                        lowest copy out if no copy is given
+ * delete isbn
+ * delete-where field=value[|...]
+ * search [field=]text
+ * export path[|field=value...][|fields=a,b]                all or matching books; data file format, or
+ *                                                           CSV/JSON Lines for .csv, .jsonl, .json (+ .gz)
+ * save
+ * </pre>
+ * A failing command is reported and the script goes on. Saving is batched: the catalog is written every
+ * {@code -Dlibrary.batch.saveEvery} changes (default 100000, 0 for only at the end), on {@code save} and once
+ * at the end, instead of once per command. Every command's result and time is printed unless quiet, and a
+ * per command summary follows at the end.
+ */
+public class BatchRunner {
+    private static final int DEFAULT_LOAN_DAYS = 14;
+    private static final int SEARCH_PREVIEW = 5;
+    private static final String[] VERBS = {
+            "add", "update", "update-where", "borrow", "return", "delete", "delete-where", "search", "export", "save"
+    };
+
+    private final Catalog manager;
+    private final long saveEvery = Long.getLong("library.batch.saveEvery", 100_000);
+    private boolean quiet;
+
+    private final Map<String, Timings> timings = new LinkedHashMap<>();
+    private long changesSinceSave;
+    private long failures;
+
+    public BatchRunner(Catalog manager) {
+        this.manager = manager;
+        for (String verb : VERBS) {
+            timings.put(verb, new Timings());
+        }
+    }
+
+    public BatchRunner setQuiet(boolean quiet) {
+        this.quiet = quiet;
+        return this;
+    }
+
+    /**
+     * Runs every command of the script and saves at the end if anything changed. Returns the number of
+     * commands that failed.
+     */
+    public long run(BufferedReader script) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+        long start = System.nanoTime();
+        long lineNumber = 0;
+        long commands = 0;
+        String line;
+
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            String command = line.trim();
+            if (command.isEmpty() || command.startsWith("#")) {
+                continue;
+            }
+            int space = command.indexOf(' ');
+            String verb = (space < 0 ? command : command.substring(0, space)).toLowerCase();
+            String args = space < 0 ? "" : command.substring(space + 1).trim();
+            commands++;
+
+            long started = System.nanoTime();
+            String result;
+            boolean ok = true;
+            try {
+                result = execute(verb, args, out);
+            } catch (RuntimeException e) {
+                result = e.getMessage() != null ? e.getMessage() : e.toString();
+                ok = false;
+            }
+            long nanos = System.nanoTime() - started;
+
+            Timings verbTimings = timings.get(verb);
+            if (verbTimings != null) {
+                verbTimings.add(nanos, ok);
+            }
+            if (!ok) {
+                failures++;
+            }
+            if (!ok || !quiet) {
+                out.printf("%7d %-12s %s %s (%.3f ms)%n", lineNumber, verb, ok ? "OK " : "ERR", result, nanos / 1e6);
+            }
+            if (saveEvery > 0 && changesSinceSave >= saveEvery) {
+                out.flush();
+                checkpoint();
+            }
+        }
+
+        if (changesSinceSave > 0) {
+            out.flush();
+            checkpoint();
+        }
+        printSummary(out, commands, (System.nanoTime() - start) / 1e9);
+        out.flush();
+        return failures;
+    }
+
+    private String execute(String verb, String args, PrintWriter out) {
+        String[] fields = BulkImporter.splitLine(args, '|');
+        switch (verb) {
+            case "add":
+                return add(fields);
+            case "update":
+                if (fields.length < 2) {
+                    throw new IllegalArgumentException("usage: update isbn|field=value[|field=value...]");
+                }
+                if (!manager.updateBook(fields[0].trim(), updates(assignments(fields, 1)))) {
+                    throw new IllegalArgumentException("not found: " + fields[0].trim());
+                }
+                changesSinceSave++;
+                return fields[0].trim();
+            case "update-where":
+                return updateWhere(args);
+            case "borrow":
+                return borrow(fields);
+            case "return":
+                return returnCopy(fields);
+            case "delete":
+                if (!manager.deleteBook(args)) {
+                    throw new IllegalArgumentException("not found: " + args);
+                }
+                changesSinceSave++;
+                return args;
+            case "delete-where": {
+                int deleted = manager.deleteBooksIf(matching(criteria(assignments(fields, 0))));
+                changesSinceSave += deleted;
+                return deleted + " deleted";
+            }
+            case "search":
+                return search(args, out);
+            case "export":
+                return export(fields);
+            case "save":
+                if (!save()) {
+                    throw new IllegalArgumentException("could not save the catalog");
+                }
+                return "saved";
+            default:
+                throw new IllegalArgumentException("unknown command, expected one of " + String.join(", ", VERBS));
+        }
+    }
+
+    private String add(String[] fields) {
+        int errors = Validator.validateRecord(fields);
+        if (errors != 0) {
+            throw new IllegalArgumentException("invalid " + Validator.describeErrors(errors));
+        }
+        Book book = new Book(
+                fields[Validator.FIELD_ISBN].trim(),
+                Validator.sanitizeInput(fields[Validator.FIELD_TITLE]),
+                fields[Validator.FIELD_AUTHOR].trim(),
+                Validator.sanitizeInput(fields[Validator.FIELD_PUBLISHER]),
+                Integer.parseInt(fields[Validator.FIELD_YEAR].trim()),
+                Genre.fromString(fields[Validator.FIELD_GENRE].trim()));
+        if (fields.length > Validator.FIELD_COUNT) {
+            book.setTotalCopies(parseInt(fields[Validator.FIELD_COUNT], "copies"));
+        }
+        if (!manager.createBook(book)) {
+            throw new IllegalArgumentException("duplicate isbn " + book.getIsbn());
+        }
+        changesSinceSave++;
+        return book.getIsbn();
+    }
+
+    private String updateWhere(String args) {
+        int arrow = args.indexOf("->");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("usage: update-where field=value[|...] -> field=value[|...]");
+        }
+        Map<String, String> criteria = criteria(assignments(BulkImporter.splitLine(args.substring(0, arrow).trim(), '|'), 0));
+        Map<String, String> updates = updates(assignments(BulkImporter.splitLine(args.substring(arrow + 2).trim(), '|'), 0));
+        int updated = manager.updateBooksIf(matching(criteria), updates);
+        changesSinceSave += updated;
+        return updated + " updated";
+    }
+
+    private String borrow(String[] fields) {
+        if (fields.length < 2 || fields[1].trim().isEmpty()) {
+            throw new IllegalArgumentException("usage: borrow isbn|borrower[|days]");
+        }
+        int days = fields.length > 2 ? parseInt(fields[2], "days") : DEFAULT_LOAN_DAYS;
+        if (days < 1) {
+            throw new IllegalArgumentException("days must be at least 1");
+        }
+        LocalDate dueDay = LocalDate.now().plusDays(days);
+        Date due = Date.from(dueDay.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        String isbn = fields[0].trim();
+        String borrower = fields[1].trim();
+        if (!Validator.isValidName(borrower)) {
+            throw new IllegalArgumentException("invalid borrower: " + Validator.getErrorMessage("borrower"));
+        }
+        Loan loan = manager.borrowCopy(isbn, borrower, due);
+        if (loan == null) {
+            Book book = manager.getBookByIsbn(isbn);
+            throw new IllegalArgumentException(book == null ? "not found: " + isbn
+                    : book.isAvailable() ? "copies are held for waiting patrons" : "no copy available");
+        }
+        changesSinceSave++;
+        return isbn + " copy " + (loan.getCopyId() + 1) + " due " + dueDay;
+    }
+
+    private String returnCopy(String[] fields) {
+        String isbn = fields[0].trim();
+        int copy = fields.length > 1 ? parseInt(fields[1], "copy") : 0;
+        LibraryManager.Returned returned = manager.returnCopy(isbn, copy - 1);
+        if (returned == null) {
+            throw new IllegalArgumentException(manager.getBookByIsbn(isbn) == null ? "not found: " + isbn
+                    : copy > 0 ? "copy " + copy + " is not on loan" : "no copy is on loan");
+        }
+        changesSinceSave++;
+        Loan next = returned.getHeldFor();
+        return isbn + " copy " + (returned.getLoan().getCopyId() + 1)
+                + (next != null ? ", now lent to " + next.getBorrowerName() + " (hold)" : "");
+    }
+
+    private String search(String args, PrintWriter out) {
+        String field = "all";
+        String text = args;
+        int eq = args.indexOf('=');
+        if (eq > 0 && args.substring(0, eq).matches("[A-Za-z]+")) {
+            field = args.substring(0, eq);
+            text = args.substring(eq + 1);
+        }
+        List<Book> results = manager.searchBooks(field, text.trim());
+        if (!quiet) {
+            for (int i = 0; i < results.size() && i < SEARCH_PREVIEW; i++) {
+                Book book = results.get(i);
+                out.println("            " + book.getIsbn() + " | " + book.getTitle() + " | " + book.getAuthor());
+            }
+        }
+        return results.size() + " found";
+    }
+
+    private String export(String[] fields) {
+        String path = fields[0].trim();
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("usage: export path[|field=value...]");
+        }
+        Map<String, String> criteria = fields.length > 1 ? assignments(fields, 1) : new LinkedHashMap<>();
+        String projection = criteria.remove("fields");
+        if (CatalogExporter.supports(path)) {
+            try {
+                CatalogExporter.Result result = CatalogExporter.forPath(path, projection)
+                        .export(manager.streamFilter(criteria), Paths.get(path));
+                return result + " to " + path;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("could not write " + path + ": " + e.getMessage());
+            }
+        }
+        if (projection != null) {
+            throw new IllegalArgumentException("fields= needs a .csv, .jsonl or .json export");
+        }
+
+        List<Book> books = criteria.isEmpty() ? manager.getBooks() : manager.filterBooks(criteria);
+        if (!FileHandler.exportToFile(books, path)) {
+            throw new IllegalArgumentException("could not write " + path);
+        }
+        return books.size() + " books to " + path;
+    }
+
+    private boolean save() {
+        if (!FileHandler.saveToFile(manager)) {
+            return false;
+        }
+        changesSinceSave = 0;
+        return true;
+    }
+
+    /**
+     * Saves between commands. A script is not worth continuing once its changes cannot be kept.
+     */
+    private void checkpoint() throws IOException {
+        if (!save()) {
+            throw new IOException("Could not save the catalog, stopping the batch");
+        }
+    }
+
+    /**
+     * Parses {@code field=value} pairs from {@code fields[from..]}. Genres may be written as in the menus
+     * ("Science Fiction").
+     */
+    private static Map<String, String> assignments(String[] fields, int from) {
+        Map<String, String> pairs = new LinkedHashMap<>();
+        for (int i = from; i < fields.length; i++) {
+            String pair = fields[i].trim();
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("expected field=value, got " + pair);
+            }
+            String field = pair.substring(0, eq).trim().toLowerCase();
+            String value = pair.substring(eq + 1).trim();
+            pairs.put(field, field.equals("genre") ? Genre.fromString(value).name() : value);
+        }
+        if (pairs.isEmpty()) {
+            throw new IllegalArgumentException("no field=value given");
+        }
+        return pairs;
+    }
+
+    /**
+     * Checks every assignment of an update against the rules {@code add} applies, since the manager only
+     * reports a bad value on stderr and skips unknown fields. The whole command fails if one is wrong.
+     */
+    private static Map<String, String> updates(Map<String, String> updates) {
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            String field = entry.getKey();
+            String value = entry.getValue();
+            boolean valid;
+            switch (field) {
+                case "title":
+                    valid = Validator.isNotEmpty(value);
+                    break;
+                case "author":
+                    valid = Validator.isValidName(value);
+                    break;
+                case "publisher":
+                    valid = Validator.isValidPublisher(value);
+                    break;
+                case "year":
+                case "publicationyear":
+                    valid = Validator.isValidYear(value);
+                    break;
+                case "genre":
+                    // assignments() already turned it into a genre name
+                    valid = true;
+                    break;
+                case "available":
+                case "isavailable":
+                    valid = value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+                    break;
+                case "copies":
+                case "totalcopies":
+                    valid = parseInt(value, field) >= 1;
+                    break;
+                default:
+                    throw new IllegalArgumentException("cannot update field: " + field);
+            }
+            if (!valid) {
+                throw new IllegalArgumentException("invalid " + field + ": " + value);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Rejects criteria on fields books do not have, which would otherwise silently match nothing.
+     */
+    private static Map<String, String> criteria(Map<String, String> criteria) {
+        for (String field : criteria.keySet()) {
+            switch (field) {
+                case "isbn":
+                case "title":
+                case "author":
+                case "publisher":
+                case "year":
+                case "publicationyear":
+                case "genre":
+                case "available":
+                case "isavailable":
+                case "copies":
+                case "availablecopies":
+                case "borrower":
+                case "borrowername":
+                case "borrowdate":
+                case "returnduedate":
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown field: " + field);
+            }
+        }
+        return criteria;
+    }
+
+    private Predicate<Book> matching(Map<String, String> criteria) {
+        Set<Book> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+        matches.addAll(manager.filterBooks(criteria));
+        return matches::contains;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + name + ": " + value);
+        }
+    }
+
+    private void printSummary(PrintWriter out, long commands, double seconds) {
+        out.println();
+        out.printf("%-12s %10s %8s %12s %10s %10s %10s%n", "command", "count", "failed", "total ms", "mean us", "p99 us", "max us");
+        for (Map.Entry<String, Timings> entry : timings.entrySet()) {
+            Timings verbTimings = entry.getValue();
+            if (verbTimings.count == 0) {
+                continue;
+            }
+            verbTimings.sort();
+            out.printf("%-12s %10d %8d %12.1f %10.1f %10.1f %10.1f%n", entry.getKey(), verbTimings.count,
+                    verbTimings.failed, verbTimings.total / 1e6, verbTimings.total / 1e3 / verbTimings.count,
+                    verbTimings.percentile(99) / 1e3, verbTimings.percentile(100) / 1e3);
+        }
+        out.printf("%d commands, %d failed, in %.2f s (%,.0f commands/min)%n",
+                commands, failures, seconds, seconds > 0 ? commands / seconds * 60 : 0.0);
+    }
+
+    /**
+     * Durations of one kind of command, in nanoseconds.
+     */
+    private static class Timings {
+        long[] nanos = new long[64];
+        int count;
+        int failed;
+        long total;
+
+        void add(long duration, boolean ok) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = duration;
+            total += duration;
+            if (!ok) {
+                failed++;
+            }
+        }
+
+        void sort() {
+            Arrays.sort(nanos, 0, count);
+        }
+
+        long percentile(double p) {
+            int index = (int) Math.ceil(p / 100.0 * count) - 1;
+            return nanos[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package utils;
+
+import entities.Book;
+import entities.Loan;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Who has which copies out.
+ * <p>
+ * Borrowers are matched on their name ignoring case and surrounding spaces, and listed under the spelling
+ * first seen. Next to the borrower to loans map, a sorted set keeps borrowers ranked by how many copies they
+ * have, so the top borrowers are read off its front instead of regrouping the catalog. A loan that starts or
+ * ends moves one borrower in the ranking, O(log n).
+ * Each borrower is updated inside its own map entry, so loans of different patrons never wait for each other.
+ * The owner has to call {@link #add(Loan)} and {@link #remove(Loan)} for every loan that starts or ends.
+ */
+public class BorrowerIndex {
+    private static final Comparator<Rank> RANKING = Comparator.comparingInt((Rank rank) -> rank.count)
+            .reversed()
+            .thenComparing(rank -> rank.key);
+
+    private final ConcurrentHashMap<String, Borrower> byName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(RANKING);
+
+    public void add(Loan loan) {
+        String name = loan.getBorrowerName();
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        byName.compute(normalize(name), (key, borrower) -> {
+            if (borrower == null) {
+                borrower = new Borrower(key, name.trim());
+            } else {
+                ranking.remove(borrower.rank);
+            }
+            borrower.loans.add(loan);
+            borrower.rank = new Rank(key, borrower.displayName, borrower.loans.size());
+            ranking.add(borrower.rank);
+            return borrower;
+        });
+    }
+
+    public void remove(Loan loan) {
+        String name = loan.getBorrowerName();
+        if (name == null) {
+            return;
+        }
+        byName.computeIfPresent(normalize(name), (key, borrower) -> {
+            if (!borrower.loans.remove(loan)) {
+                return borrower;
+            }
+            ranking.remove(borrower.rank);
+            if (borrower.loans.isEmpty()) {
+                return null;
+            }
+            borrower.rank = new Rank(key, borrower.displayName, borrower.loans.size());
+            ranking.add(borrower.rank);
+            return borrower;
+        });
+    }
+
+    /**
+     * Adds every loan the book currently has.
+     */
+    public void addAll(Book book) {
+        for (Loan loan : book.getLoans()) {
+            add(loan);
+        }
+    }
+
+    public void removeAll(Book book) {
+        for (Loan loan : book.getLoans()) {
+            remove(loan);
+        }
+    }
+
+    /**
+     * Loans the borrower currently has, in the order they were made.
+     */
+    public List<Loan> getLoans(String borrowerName) {
+        Borrower borrower = byName.get(normalize(borrowerName));
+        if (borrower == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(borrower.loans);
+    }
+
+    /**
+     * Books the borrower currently has, one entry per copy.
+     */
+    public List<Book> getBooks(String borrowerName) {
+        List<Book> books = new ArrayList<>();
+        for (Loan loan : getLoans(borrowerName)) {
+            books.add(loan.getBook());
+        }
+        return books;
+    }
+
+    /**
+     * The borrowers with the most copies out, most first, with their counts.
+     */
+    public LinkedHashMap<String, Long> top(int n) {
+        LinkedHashMap<String, Long> top = new LinkedHashMap<>();
+        Iterator<Rank> it = ranking.iterator();
+        while (top.size() < n && it.hasNext()) {
+            Rank rank = it.next();
+            top.put(rank.displayName, (long) rank.count);
+        }
+        return top;
+    }
+
+    /**
+     * Number of borrowers with at least one copy out.
+     */
+    public int getBorrowerCount() {
+        return byName.size();
+    }
+
+    public void clear() {
+        byName.clear();
+        ranking.clear();
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Mutated only inside its map entry's compute; the copy-on-write list lets readers copy it without locking.
+     */
+    private static class Borrower {
+        final String key;
+        final String displayName;
+        // a patron has a handful of loans, a list is smaller and faster than a set here
+        final List<Loan> loans = new CopyOnWriteArrayList<>();
+        volatile Rank rank;
+
+        Borrower(String key, String displayName) {
+            this.key = key;
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * Immutable snapshot of a borrower's count, so the ranking never sees a key change under it.
+     */
+    private static class Rank {
+        final String key;
+        final String displayName;
+        final int count;
+
+        Rank(String key, String displayName, int count) {
+            this.key = key;
+            this.displayName = displayName;
+            this.count = count;
+        }
+    }
+}
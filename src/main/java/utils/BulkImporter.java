@@ -0,0 +1,422 @@
+package utils;
+
+import entities.Book;
+import entities.enums.Genre;
+import managers.LibraryManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Streams a CSV or pipe-delimited feed into a LibraryManager.
+ * <p>
+ * Lines flow through a bounded pipeline: a reader thread cuts the input into batches,
+ * worker threads parse and validate them, and the calling thread de-duplicates and inserts
+ * batches in input order. Columns are ISBN, Title, Author, Publisher, Year, Genre; extra columns
+ * are ignored. Rejected rows are written to a side file together with the reason.
+ */
+public class BulkImporter {
+    private static final int BATCH_SIZE = 1024;
+    private static final long PROGRESS_EVERY = 100_000;
+
+    private final LibraryManager manager;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private int queueCapacity = 64;
+    private boolean verbose = true;
+
+    public BulkImporter(LibraryManager manager) {
+        this.manager = manager;
+    }
+
+    public BulkImporter setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+        return this;
+    }
+
+    public BulkImporter setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        return this;
+    }
+
+    public BulkImporter setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        return this;
+    }
+
+    /**
+     * Imports a file, writing rejected rows to {@code <file>.rejected}.
+     */
+    public Result importFile(String feedPath) throws IOException {
+        return importFile(feedPath, feedPath + ".rejected");
+    }
+
+    public Result importFile(String feedPath, String rejectPath) throws IOException {
+        Path feed = Paths.get(feedPath);
+        try (BufferedReader reader = Files.newBufferedReader(feed, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(Paths.get(rejectPath), StandardCharsets.UTF_8)) {
+            Result result = importStream(reader, rejects);
+            result.rejectFile = rejectPath;
+            return result;
+        }
+    }
+
+    /**
+     * Runs the pipeline over any reader. The delimiter is detected from the first line (the header if there is one):
+     * whichever of '|' and ',' comes first outside double quotes, ',' if neither does.
+     */
+    public Result importStream(BufferedReader reader, Writer rejects) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        String first = reader.readLine();
+        if (first == null) {
+            result.elapsedNanos = System.nanoTime() - start;
+            return result;
+        }
+        char delimiter = detectDelimiter(first);
+
+        BlockingQueue<Batch> rawQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> parsedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Future<?> readerTask = pool.submit(() -> {
+                readBatches(reader, first, rawQueue);
+                return null;
+            });
+            List<Future<?>> workerTasks = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                workerTasks.add(pool.submit(() -> {
+                    parseBatches(delimiter, rawQueue, parsedQueue);
+                    return null;
+                }));
+            }
+
+            insertBatches(parsedQueue, rejects, result, start, readerTask, workerTasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void readBatches(BufferedReader reader, String first, BlockingQueue<Batch> rawQueue)
+            throws IOException, InterruptedException {
+        long sequence = 0;
+        long lineNumber = 1;
+        String line = first;
+        if (isHeader(first)) {
+            line = reader.readLine();
+            lineNumber++;
+        }
+
+        try {
+            Batch batch = new Batch(sequence++, lineNumber);
+            while (line != null) {
+                batch.lines.add(line);
+                if (batch.lines.size() == BATCH_SIZE) {
+                    rawQueue.put(batch);
+                    batch = new Batch(sequence++, lineNumber + 1);
+                }
+                line = reader.readLine();
+                lineNumber++;
+            }
+            if (!batch.lines.isEmpty()) {
+                rawQueue.put(batch);
+            }
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                rawQueue.put(Batch.END);
+            }
+        }
+    }
+
+    private static boolean isHeader(String line) {
+        return line.regionMatches(true, 0, "ISBN", 0, 4);
+    }
+
+    static char detectDelimiter(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '|' || c == ',')) {
+                return c;
+            }
+        }
+        return ',';
+    }
+
+    private void parseBatches(char delimiter, BlockingQueue<Batch> rawQueue, BlockingQueue<Batch> parsedQueue)
+            throws InterruptedException {
+        try {
+            Batch batch;
+            while ((batch = rawQueue.take()) != Batch.END) {
+                parseBatch(batch, delimiter);
+                parsedQueue.put(batch);
+            }
+        } finally {
+            parsedQueue.put(Batch.END);
+        }
+    }
+
+    private static void parseBatch(Batch batch, char delimiter) {
+        int size = batch.lines.size();
+        batch.books = new Book[size];
+        batch.errors = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            String line = batch.lines.get(i);
+            if (!Validator.isNotEmpty(line)) {
+                continue;
+            }
+            // whatever goes wrong with a row is that row's error; the rest of the batch still goes in
+            try {
+                batch.books[i] = parseRow(line, delimiter);
+            } catch (RuntimeException e) {
+                batch.errors[i] = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+        }
+    }
+
+    private static Book parseRow(String line, char delimiter) {
+        String[] fields = splitLine(line, delimiter);
+        // feeds often pad around the delimiter; the validator expects bare values
+        for (int f = 0; f < fields.length; f++) {
+            fields[f] = fields[f].trim();
+        }
+        int errors = Validator.validateRecord(fields);
+        if (errors != 0) {
+            throw new IllegalArgumentException("invalid " + Validator.describeErrors(errors));
+        }
+        return new Book(
+                fields[Validator.FIELD_ISBN],
+                Validator.sanitizeInput(fields[Validator.FIELD_TITLE]),
+                fields[Validator.FIELD_AUTHOR],
+                Validator.sanitizeInput(fields[Validator.FIELD_PUBLISHER]),
+                Integer.parseInt(fields[Validator.FIELD_YEAR]),
+                Genre.fromString(fields[Validator.FIELD_GENRE]));
+    }
+
+    /**
+     * Inserts batches strictly in input order so that the first occurrence of an ISBN wins.
+     * A worker that dies loses its batch, so the import fails as soon as that is noticed.
+     */
+    private void insertBatches(BlockingQueue<Batch> parsedQueue, Writer rejects, Result result, long start,
+                               Future<?> readerTask, List<Future<?>> workerTasks) throws IOException, InterruptedException {
+        Map<Long, Batch> pending = new HashMap<>();
+        long nextSequence = 0;
+        int finishedWorkers = 0;
+        long nextProgress = PROGRESS_EVERY;
+
+        // every worker forwards its batches before its end marker, so all batches are in once all markers are
+        while (finishedWorkers < workers) {
+            Batch batch = parsedQueue.poll(100, TimeUnit.MILLISECONDS);
+            if (batch == null) {
+                checkReader(readerTask);
+                checkWorkers(workerTasks);
+                continue;
+            }
+            if (batch == Batch.END) {
+                finishedWorkers++;
+                checkWorkers(workerTasks);
+                continue;
+            }
+            pending.put(batch.sequence, batch);
+
+            Batch ready;
+            while ((ready = pending.remove(nextSequence)) != null) {
+                insertBatch(ready, rejects, result);
+                nextSequence++;
+            }
+
+            if (verbose && result.rowsRead >= nextProgress) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("  %,d rows processed (%,.0f rows/sec)%n", result.rowsRead, result.rowsRead / seconds);
+                nextProgress += PROGRESS_EVERY;
+            }
+        }
+        checkReader(readerTask);
+        for (Future<?> worker : workerTasks) {
+            awaitWorker(worker);
+        }
+        if (!pending.isEmpty()) {
+            throw new IOException(pending.size() + " batches could not be processed");
+        }
+    }
+
+    private static void checkReader(Future<?> readerTask) throws IOException, InterruptedException {
+        if (!readerTask.isDone()) {
+            return;
+        }
+        try {
+            readerTask.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading feed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void checkWorkers(List<Future<?>> workerTasks) throws IOException, InterruptedException {
+        for (Future<?> worker : workerTasks) {
+            if (worker.isDone()) {
+                awaitWorker(worker);
+            }
+        }
+    }
+
+    private static void awaitWorker(Future<?> worker) throws IOException, InterruptedException {
+        try {
+            worker.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing feed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Adds the batch's valid books in one call, so listeners see one event per batch rather than per row.
+     */
+    private void insertBatch(Batch batch, Writer rejects, Result result) throws IOException {
+        List<Book> valid = new ArrayList<>(batch.lines.size());
+        for (Book book : batch.books) {
+            if (book != null) {
+                valid.add(book);
+            }
+        }
+        boolean[] created = manager.createBooks(valid);
+
+        int next = 0;
+        for (int i = 0; i < batch.lines.size(); i++) {
+            Book book = batch.books[i];
+            String error = batch.errors[i];
+            if (book == null && error == null) {
+                continue;
+            }
+
+            result.rowsRead++;
+            if (book != null) {
+                if (created[next++]) {
+                    result.imported++;
+                    continue;
+                }
+                error = "duplicate isbn";
+                result.duplicates++;
+            }
+
+            result.rejected++;
+            rejects.write(Long.toString(batch.firstLine + i));
+            rejects.write('|');
+            rejects.write(error);
+            rejects.write('|');
+            rejects.write(batch.lines.get(i));
+            rejects.write('\n');
+        }
+    }
+
+    /**
+     * Splits one line. Comma separated lines may quote fields with double quotes ("" escapes a quote).
+     */
+    static String[] splitLine(String line, char delimiter) {
+        if (delimiter != ',' || line.indexOf('"') < 0) {
+            List<String> fields = new ArrayList<>(Validator.FIELD_COUNT + 4);
+            int from = 0;
+            int to;
+            while ((to = line.indexOf(delimiter, from)) >= 0) {
+                fields.add(line.substring(from, to));
+                from = to + 1;
+            }
+            fields.add(line.substring(from));
+            return fields.toArray(new String[0]);
+        }
+
+        List<String> fields = new ArrayList<>(Validator.FIELD_COUNT + 4);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static class Batch {
+        static final Batch END = new Batch(-1, -1);
+
+        final long sequence;
+        final long firstLine;
+        final List<String> lines;
+        Book[] books;
+        String[] errors;
+
+        Batch(long sequence, long firstLine) {
+            this.sequence = sequence;
+            this.firstLine = firstLine;
+            this.lines = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Counters for one import run.
+     */
+    public static class Result {
+        private long rowsRead;
+        private long imported;
+        private long rejected;
+        private long duplicates;
+        private long elapsedNanos;
+        private String rejectFile;
+
+        public long getRowsRead() { return rowsRead; }
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public long getDuplicates() { return duplicates; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+        public String getRejectFile() { return rejectFile; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Rows: %,d | Imported: %,d | Rejected: %,d (%,d duplicates) | %,d ms | %,.0f rows/sec%s",
+                    rowsRead, imported, rejected, duplicates, getElapsedMillis(), getRowsPerSecond(),
+                    rejected > 0 && rejectFile != null ? " | Rejected rows: " + rejectFile : "");
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package utils;
+
+import entities.Book;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes books as CSV or JSON Lines for other systems, optionally gzip compressed and limited to some fields.
+ * <p>
+ * Books are pulled one at a time from a lazy stream such as {@code LibraryManager.streamFilter}, formatted into
+ * one reusable line buffer and encoded into a fixed size byte buffer which is written to the channel whenever it
+ * fills up. Memory use is the same for ten books or ten million. CSV starts with a header line and quotes values
+ * as RFC 4180 asks; JSON Lines writes one object per book with numbers and booleans unquoted and absent loan
+ * fields as null.
+ * <p>
+ * The format and compression follow the file name: {@code .csv}, {@code .jsonl} or {@code .json}, each optionally
+ * followed by {@code .gz}. An exporter reuses its buffers, so it runs one export at a time.
+ */
+public class CatalogExporter {
+    public static final String[] FIELDS = {
+            "isbn", "title", "author", "publisher", "year", "genre", "available", "totalCopies", "availableCopies",
+            "borrowCount", "borrower", "borrowDate", "returnDueDate"
+    };
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    public enum Format { CSV, JSONL }
+
+    private final Format format;
+    private final boolean gzip;
+    private final int[] fields;
+    private final StringBuilder line = new StringBuilder(512);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    /**
+     * @param fields field names to write in this order, all of {@link #FIELDS} if null or empty
+     */
+    public CatalogExporter(Format format, boolean gzip, List<String> fields) {
+        this.format = format;
+        this.gzip = gzip;
+        if (fields == null || fields.isEmpty()) {
+            this.fields = new int[FIELDS.length];
+            for (int i = 0; i < FIELDS.length; i++) {
+                this.fields[i] = i;
+            }
+        } else {
+            this.fields = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                this.fields[i] = fieldId(fields.get(i).trim());
+            }
+        }
+    }
+
+    /**
+     * True if the file name asks for CSV or JSON Lines, with or without {@code .gz}.
+     */
+    public static boolean supports(String path) {
+        return formatOf(path) != null;
+    }
+
+    /**
+     * Exporter for the format and compression the file name asks for.
+     *
+     * @param fieldList comma separated field names, or null for all fields
+     */
+    public static CatalogExporter forPath(String path, String fieldList) {
+        Format format = formatOf(path);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown export format, use .csv, .jsonl or .json (optionally .gz): " + path);
+        }
+        List<String> fields = new ArrayList<>();
+        if (fieldList != null) {
+            for (String field : fieldList.split(",")) {
+                if (!field.isBlank()) {
+                    fields.add(field.trim());
+                }
+            }
+        }
+        return new CatalogExporter(format, path.toLowerCase(Locale.ROOT).endsWith(".gz"), fields);
+    }
+
+    private static Format formatOf(String path) {
+        String name = path.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return Format.JSONL;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the books to a file, replacing it, and creates missing parent directories.
+     */
+    public Result export(Stream<Book> books, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(books, file);
+        }
+    }
+
+    /**
+     * Writes the books to the channel, compressed if this exporter was made for gzip. The channel is not closed.
+     */
+    public Result export(Stream<Book> books, WritableByteChannel channel) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        if (!gzip) {
+            write(books, channel, result);
+            result.fileBytes = result.bytes;
+        } else {
+            UnclosableStream sink = new UnclosableStream(channel);
+            // closing releases the Deflater's native memory, also on failure; the sink leaves the channel open
+            try (GZIPOutputStream compressed = new GZIPOutputStream(sink, 64 * 1024)) {
+                write(books, Channels.newChannel(compressed), result);
+            }
+            result.fileBytes = sink.written;
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void write(Stream<Book> books, WritableByteChannel channel, Result result) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // an unpaired surrogate in a title must not cut the rest of the line off
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        if (format == Format.CSV) {
+            line.setLength(0);
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(FIELDS[fields[i]]);
+            }
+            line.append('\n');
+            result.bytes += encode(encoder, buffer, channel);
+        }
+
+        Iterator<Book> iterator = books.iterator();
+        while (iterator.hasNext()) {
+            Book book = iterator.next();
+            line.setLength(0);
+            if (format == Format.CSV) {
+                appendCsv(book);
+            } else {
+                appendJson(book);
+            }
+            result.bytes += encode(encoder, buffer, channel);
+            result.books++;
+        }
+
+        buffer.flip();
+        drain(buffer, channel);
+    }
+
+    /**
+     * Encodes the line into the buffer, writing the buffer out whenever it is full. Returns the encoded size.
+     * Each line is a complete input, so the encoder is reset afterwards for the next one.
+     */
+    private long encode(CharsetEncoder encoder, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        int before = buffer.position();
+        long written = 0;
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult coded = encoder.encode(chars, buffer, true);
+            if (coded.isUnderflow()) {
+                break;
+            }
+            if (coded.isError()) {
+                coded.throwException();
+            }
+            written += buffer.position() - before;
+            buffer.flip();
+            drain(buffer, channel);
+            buffer.clear();
+            before = 0;
+        }
+        encoder.reset();
+        return written + buffer.position() - before;
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void appendCsv(Book book) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String value = value(book, fields[i]);
+            if (value == null) {
+                continue;
+            }
+            if (needsQuotes(value)) {
+                line.append('"');
+                for (int c = 0; c < value.length(); c++) {
+                    char ch = value.charAt(c);
+                    if (ch == '"') {
+                        line.append('"');
+                    }
+                    line.append(ch);
+                }
+                line.append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        line.append('\n');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendJson(Book book) {
+        line.append('{');
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            int field = fields[i];
+            line.append('"').append(FIELDS[field]).append("\":");
+            String value = value(book, field);
+            if (value == null) {
+                line.append("null");
+            } else if (isNumberOrBoolean(field)) {
+                line.append(value);
+            } else {
+                appendJsonString(value);
+            }
+        }
+        line.append("}\n");
+    }
+
+    private void appendJsonString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    private static boolean isNumberOrBoolean(int field) {
+        switch (FIELDS[field]) {
+            case "year":
+            case "available":
+            case "totalCopies":
+            case "availableCopies":
+            case "borrowCount":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The field as text, or null if the book has no value for it (no loan).
+     */
+    private String value(Book book, int field) {
+        switch (FIELDS[field]) {
+            case "isbn":
+                return book.getIsbn();
+            case "title":
+                return book.getTitle();
+            case "author":
+                return book.getAuthor();
+            case "publisher":
+                return book.getPublisher();
+            case "year":
+                return String.valueOf(book.getPublicationYear());
+            case "genre":
+                return book.getGenre().toString();
+            case "available":
+                return String.valueOf(book.isAvailable());
+            case "totalCopies":
+                return String.valueOf(book.getTotalCopies());
+            case "availableCopies":
+                return String.valueOf(book.getAvailableCopies());
+            case "borrowCount":
+                return String.valueOf(book.getBorrowCount());
+            case "borrower":
+                return book.getBorrowerName();
+            case "borrowDate":
+                return formatDate(book.getBorrowDate());
+            case "returnDueDate":
+                return formatDate(book.getReturnDueDate());
+            default:
+                return null;
+        }
+    }
+
+    private String formatDate(Date date) {
+        return date == null ? null : dateFormat.format(date);
+    }
+
+    /**
+     * Index into {@link #FIELDS}; accepts the names case insensitively along with the aliases used elsewhere
+     * (publicationYear, copies, borrowerName, isAvailable).
+     */
+    private static int fieldId(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        switch (lower) {
+            case "publicationyear":
+                lower = "year";
+                break;
+            case "copies":
+                lower = "totalcopies";
+                break;
+            case "borrowername":
+                lower = "borrower";
+                break;
+            case "isavailable":
+                lower = "available";
+                break;
+        }
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equalsIgnoreCase(lower)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown export field: " + name + " (fields: " + String.join(",", FIELDS) + ")");
+    }
+
+    /**
+     * Size and speed of one export.
+     */
+    public static class Result {
+        private long books;
+        private long bytes;
+        private long fileBytes;
+        private long nanos;
+
+        public long getBooks() { return books; }
+
+        /**
+         * Bytes of CSV or JSON written, before compression.
+         */
+        public long getBytes() { return bytes; }
+
+        /**
+         * Bytes that reached the file, after compression.
+         */
+        public long getFileBytes() { return fileBytes; }
+
+        public long getMillis() { return nanos / 1_000_000; }
+
+        /**
+         * Uncompressed output megabytes per second.
+         */
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes / 1e6 / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            String size = fileBytes != bytes
+                    ? String.format("%.1f MB (%.1f MB compressed)", bytes / 1e6, fileBytes / 1e6)
+                    : String.format("%.1f MB", bytes / 1e6);
+            return String.format("%d books, %s in %d ms, %.1f MB/s", books, size, getMillis(), getMegabytesPerSecond());
+        }
+    }
+
+    /**
+     * Lets the gzip stream write to the channel without closing it on finish.
+     */
+    private static class UnclosableStream extends OutputStream {
+        private final WritableByteChannel channel;
+        private long written;
+
+        UnclosableStream(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            drain(ByteBuffer.wrap(bytes, offset, length), channel);
+            written += length;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package utils;
+
+import entities.Loan;
+import managers.LoanEventListener;
+
+import java.util.List;
+
+/**
+ * Prints due soon and overdue reminders to the console, listing at most a few loans per batch.
+ */
+public class ConsoleLoanNotifier implements LoanEventListener {
+    private static final int MAX_LISTED = 5;
+
+    @Override
+    public void loansDueSoon(List<Loan> loans) {
+        print(loans.size() + " loan(s) due soon", loans);
+    }
+
+    @Override
+    public void loansBecameOverdue(List<Loan> loans) {
+        print(loans.size() + " loan(s) became overdue", loans);
+    }
+
+    private void print(String header, List<Loan> loans) {
+        StringBuilder message = new StringBuilder("\n[Reminder] ").append(header).append(":\n");
+        for (int i = 0; i < loans.size() && i < MAX_LISTED; i++) {
+            message.append("  ").append(loans.get(i)).append("\n");
+        }
+        if (loans.size() > MAX_LISTED) {
+            message.append("  ... and ").append(loans.size() - MAX_LISTED).append(" more\n");
+        }
+        System.out.print(message);
+    }
+}
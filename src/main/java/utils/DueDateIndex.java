@@ -0,0 +1,136 @@
+package utils;
+
+import entities.Book;
+import entities.Loan;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Loans ordered by due date.
+ * <p>
+ * "What is overdue", "what is due in the next days" and "how many are overdue" become range reads at the front
+ * of a sorted set instead of a walk over the whole catalog. Loans without a due date are not kept.
+ * Entries are immutable and keyed by due date, title and copy, so borrows and returns of different copies can
+ * update the set concurrently without any lock. The owner has to call {@link #add(Loan)} and
+ * {@link #remove(Loan)} for every loan that starts or ends.
+ */
+public class DueDateIndex {
+    private final ConcurrentSkipListSet<Entry> byDue = new ConcurrentSkipListSet<>();
+
+    public void add(Loan loan) {
+        Entry entry = Entry.of(loan);
+        if (entry != null) {
+            byDue.add(entry);
+        }
+    }
+
+    public void remove(Loan loan) {
+        Entry entry = Entry.of(loan);
+        if (entry != null) {
+            byDue.remove(entry);
+        }
+    }
+
+    /**
+     * Adds every loan the book currently has.
+     */
+    public void addAll(Book book) {
+        for (Loan loan : book.getLoans()) {
+            add(loan);
+        }
+    }
+
+    public void removeAll(Book book) {
+        for (Loan loan : book.getLoans()) {
+            remove(loan);
+        }
+    }
+
+    /**
+     * Loans due strictly before the given time, earliest first.
+     */
+    public List<Loan> dueBefore(long time) {
+        return toLoans(byDue.headSet(Entry.bound(time), false));
+    }
+
+    /**
+     * Loans due in {@code [from, to)}, earliest first.
+     */
+    public List<Loan> dueBetween(long from, long to) {
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        return toLoans(byDue.subSet(Entry.bound(from), true, Entry.bound(to), false));
+    }
+
+    public int countDueBefore(long time) {
+        return byDue.headSet(Entry.bound(time), false).size();
+    }
+
+    /**
+     * Earliest due date of all loans, or null if none has one.
+     */
+    public Date getEarliestDue() {
+        Entry first = byDue.isEmpty() ? null : byDue.first();
+        return first == null ? null : new Date(first.due);
+    }
+
+    public int size() {
+        return byDue.size();
+    }
+
+    public void clear() {
+        byDue.clear();
+    }
+
+    private static List<Loan> toLoans(NavigableSet<Entry> entries) {
+        List<Loan> loans = new ArrayList<>();
+        for (Entry entry : entries) {
+            loans.add(entry.loan);
+        }
+        return loans;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final long due;
+        final long isbnKey;
+        final int copyId;
+        final Loan loan;
+
+        private Entry(long due, long isbnKey, int copyId, Loan loan) {
+            this.due = due;
+            this.isbnKey = isbnKey;
+            this.copyId = copyId;
+            this.loan = loan;
+        }
+
+        static Entry of(Loan loan) {
+            Book book = loan.getBook();
+            if (loan.getDueDate() == null || book.getIsbnKey() == IsbnKey.INVALID) {
+                return null;
+            }
+            return new Entry(loan.getDueDate().getTime(), book.getIsbnKey(), loan.getCopyId(), loan);
+        }
+
+        /**
+         * Sorts before every real entry with the same due time (real keys are never negative).
+         */
+        static Entry bound(long due) {
+            return new Entry(due, IsbnKey.INVALID, -1, null);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byTime = Long.compare(due, other.due);
+            if (byTime != 0) {
+                return byTime;
+            }
+            int byIsbn = Long.compare(isbnKey, other.isbnKey);
+            return byIsbn != 0 ? byIsbn : Integer.compare(copyId, other.copyId);
+        }
+    }
+}
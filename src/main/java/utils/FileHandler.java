@@ -2,10 +2,11 @@ package utils;
 
 
 import entities.Book;
-import managers.LibraryManager;
+import managers.Catalog;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * Handles all file I/O operations for the Library Management System
@@ -13,6 +14,7 @@ import java.util.ArrayList;
 public class FileHandler {
     private static final String DATA_FILE = "data/books.txt";
     private static final String DATA_DIR = "data";
+    private static final String HEADER = "ISBN|Title|Author|Publisher|Year|Genre|Available|Borrower|BorrowDate|ReturnDueDate|BorrowCount|Copies|Loans";
 
 
     private static void ensureDataDirectory() {
@@ -22,11 +24,11 @@ public class FileHandler {
         }
     }
 
-    public static boolean saveToFile(LibraryManager manager) {
+    public static boolean saveToFile(Catalog manager) {
         ensureDataDirectory();
 
         try (PrintWriter writer = new PrintWriter(new FileWriter(DATA_FILE))) {
-            writer.println("ISBN|Title|Author|Publisher|Year|Genre|Available|Borrower|BorrowDate|ReturnDueDate");
+            writer.println(HEADER);
 
             for (Book book : manager.getBooks()) {
                 writer.println(book.toFileFormat());
@@ -47,7 +49,28 @@ public class FileHandler {
         }
     }
 
-    public static void loadFromFile(LibraryManager manager) {
+    /**
+     * Writes the given books to any file in the data file format, e.g. for a backup or a filtered extract.
+     */
+    public static boolean exportToFile(Collection<Book> books, String path) {
+        File parent = new File(path).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(path)))) {
+            writer.println(HEADER);
+            for (Book book : books) {
+                writer.println(book.toFileFormat());
+            }
+            return !writer.checkError();
+        } catch (IOException e) {
+            System.err.println("File I/O error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static void loadFromFile(Catalog manager) {
         ensureDataDirectory();
 
         File file = new File(DATA_FILE);
@@ -0,0 +1,297 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typo tolerant word index.
+ * <p>
+ * Texts are split into lowercase words. The distinct words form a trie and every word points to the items
+ * containing it. A lookup walks the trie while computing one row of the Levenshtein table per character
+ * (which is what a Levenshtein automaton does), and abandons a branch as soon as every cell of the row is
+ * over the allowed distance. With one or two edits that cuts the walk to a small part of the vocabulary.
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class FuzzyIndex<T> {
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    private Node<T> root = new Node<>();
+    private int wordCount;
+
+    /**
+     * Indexes every word of the text for the item.
+     */
+    public void add(String text, T item) {
+        for (String token : tokenize(text)) {
+            Node<T> node = root;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.childOrCreate(token.charAt(i));
+            }
+            if (node.items == null) {
+                node.items = Collections.newSetFromMap(new IdentityHashMap<>(4));
+                wordCount++;
+            }
+            node.items.add(item);
+        }
+    }
+
+    public void remove(String text, T item) {
+        for (String token : tokenize(text)) {
+            removeWord(token, item);
+        }
+    }
+
+    public void replace(String oldText, String newText, T item) {
+        if (!tokenize(oldText).equals(tokenize(newText))) {
+            remove(oldText, item);
+            add(newText, item);
+        }
+    }
+
+    /**
+     * Items where every word of the query is within the allowed edit distance of some word of the text.
+     * Short words get fewer edits (one per three letters) so that "the" does not match every three-letter word.
+     * Results are ordered by total distance, closest first.
+     */
+    public List<T> search(String query, int maxDistance) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // long words are the most selective, start with them so later words only check what is left
+        tokens.sort((a, b) -> b.length() - a.length());
+
+        Map<T, Integer> candidates = null;
+        for (String token : tokens) {
+            int allowed = Math.min(Math.max(0, maxDistance), token.length() / 3);
+            Map<T, Integer> matches = new IdentityHashMap<>();
+            new Walk(token, allowed, candidates, matches).run();
+
+            if (candidates != null) {
+                // every query word has to match, keep the sum of the best distances
+                for (Map.Entry<T, Integer> entry : matches.entrySet()) {
+                    entry.setValue(entry.getValue() + candidates.get(entry.getKey()));
+                }
+            }
+            candidates = matches;
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+
+        List<Map.Entry<T, Integer>> ranked = new ArrayList<>(candidates.entrySet());
+        ranked.sort(Map.Entry.comparingByValue());
+        List<T> result = new ArrayList<>(ranked.size());
+        for (Map.Entry<T, Integer> entry : ranked) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the content. Texts and items are parallel lists.
+     */
+    public void rebuild(List<String> texts, List<T> items) {
+        clear();
+        for (int i = 0; i < texts.size(); i++) {
+            add(texts.get(i), items.get(i));
+        }
+    }
+
+    public void clear() {
+        root = new Node<>();
+        wordCount = 0;
+    }
+
+    /**
+     * Number of distinct words.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    private void removeWord(String token, T item) {
+        @SuppressWarnings("unchecked")
+        Node<T>[] path = (Node<T>[]) new Node<?>[token.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < token.length(); i++) {
+            path[i + 1] = path[i].child(token.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+
+        Node<T> node = path[token.length()];
+        if (node.items == null || !node.items.remove(item) || !node.items.isEmpty()) {
+            return;
+        }
+        node.items = null;
+        wordCount--;
+
+        // drop the branch up to the first node that still leads somewhere
+        for (int i = token.length(); i > 0 && path[i].items == null && path[i].childCount == 0; i--) {
+            path[i - 1].removeChild(token.charAt(i - 1));
+        }
+    }
+
+    /**
+     * One query word walked through the trie. Rows of the Levenshtein table are reused per depth.
+     */
+    private class Walk {
+        private final String token;
+        private final int allowed;
+        private final Map<T, Integer> candidates;
+        private final Map<T, Integer> matches;
+        private int[][] rows = new int[16][];
+
+        Walk(String token, int allowed, Map<T, Integer> candidates, Map<T, Integer> matches) {
+            this.token = token;
+            this.allowed = allowed;
+            this.candidates = candidates;
+            this.matches = matches;
+        }
+
+        void run() {
+            int[] first = row(0);
+            for (int j = 0; j <= token.length(); j++) {
+                first[j] = j;
+            }
+            descend(root, 0);
+        }
+
+        private void descend(Node<T> node, int depth) {
+            int[] previous = rows[depth];
+            for (int c = 0; c < node.childCount; c++) {
+                Node<T> child = node.children[c];
+                char ch = node.keys[c];
+                int[] current = row(depth + 1);
+
+                current[0] = previous[0] + 1;
+                int best = current[0];
+                for (int j = 1; j <= token.length(); j++) {
+                    int cost = token.charAt(j - 1) == ch ? 0 : 1;
+                    current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                    best = Math.min(best, current[j]);
+                }
+
+                int distance = current[token.length()];
+                if (child.items != null && distance <= allowed) {
+                    addMatches(child.items, distance);
+                }
+                if (best <= allowed) {
+                    descend(child, depth + 1);
+                }
+            }
+        }
+
+        private int[] row(int depth) {
+            if (depth == rows.length) {
+                rows = Arrays.copyOf(rows, depth * 2);
+            }
+            if (rows[depth] == null) {
+                rows[depth] = new int[token.length() + 1];
+            }
+            return rows[depth];
+        }
+
+        private void addMatches(Set<T> items, int distance) {
+            if (candidates == null) {
+                for (T item : items) {
+                    matches.merge(item, distance, Math::min);
+                }
+            } else if (candidates.size() < items.size()) {
+                for (T item : candidates.keySet()) {
+                    if (items.contains(item)) {
+                        matches.merge(item, distance, Math::min);
+                    }
+                }
+            } else {
+                for (T item : items) {
+                    if (candidates.containsKey(item)) {
+                        matches.merge(item, distance, Math::min);
+                    }
+                }
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static class Node<T> {
+        char[] keys;
+        Node<T>[] children;
+        int childCount;
+        Set<T> items;
+
+        @SuppressWarnings("unchecked")
+        Node() {
+            this.children = (Node<T>[]) NO_CHILDREN;
+        }
+
+        /**
+         * Children are kept sorted by character.
+         */
+        int indexOf(char c) {
+            return childCount == 0 ? -1 : Arrays.binarySearch(keys, 0, childCount, c);
+        }
+
+        Node<T> child(char c) {
+            int index = indexOf(c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node<T> childOrCreate(char c) {
+            int index = indexOf(c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -(index + 1);
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = keys == null ? new char[capacity] : Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, childCount - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+            Node<T> child = new Node<>();
+            keys[insertAt] = c;
+            children[insertAt] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChild(char c) {
+            int index = indexOf(c);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            children[--childCount] = null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package utils;
+
+import entities.Hold;
+import entities.enums.HoldStatus;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waiting lists, one FIFO queue per title.
+ * <p>
+ * Placing a hold is a lock-free append to the title's queue, so a release day rush of holds on one title does
+ * not serialize. Cancelled holds stay in the queue and are skipped when the queue is served, which keeps
+ * cancellation O(1) as well. A per-title counter tracks how many holds are still waiting.
+ * Holds are also filed by patron (name matched ignoring case and surrounding spaces) for "my holds" lookups;
+ * a patron can have one waiting hold per title.
+ */
+public class HoldQueues {
+    private final ConcurrentHashMap<Long, TitleQueue> byTitle = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<Hold>> byPatron = new ConcurrentHashMap<>();
+
+    /**
+     * Appends a hold for the patron, or returns null if the patron already waits for this title.
+     */
+    public Hold place(String isbn, long isbnKey, String patronName) {
+        Hold hold = new Hold(isbn, isbnKey, patronName.trim(), new Date());
+        boolean[] added = {false};
+        byPatron.compute(normalize(patronName), (key, holds) -> {
+            if (holds == null) {
+                holds = new CopyOnWriteArrayList<>();
+            }
+            for (Hold existing : holds) {
+                if (existing.getIsbnKey() == isbnKey && existing.isWaiting()) {
+                    return holds;
+                }
+            }
+            holds.add(hold);
+            added[0] = true;
+            return holds;
+        });
+        if (!added[0]) {
+            return null;
+        }
+
+        TitleQueue queue = byTitle.computeIfAbsent(isbnKey, key -> new TitleQueue());
+        queue.waiting.incrementAndGet();
+        queue.holds.offer(hold);
+        return hold;
+    }
+
+    /**
+     * Takes the oldest waiting hold of the title and marks it fulfilled, or returns null if nobody waits.
+     */
+    public Hold next(long isbnKey) {
+        TitleQueue queue = byTitle.get(isbnKey);
+        if (queue == null) {
+            return null;
+        }
+        Hold hold;
+        while ((hold = queue.holds.poll()) != null) {
+            if (hold.complete(HoldStatus.FULFILLED)) {
+                queue.waiting.decrementAndGet();
+                forget(hold);
+                return hold;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cancels the patron's waiting hold on the title. Returns false if there was none.
+     */
+    public boolean cancel(String patronName, long isbnKey) {
+        for (Hold hold : getHolds(patronName)) {
+            if (hold.getIsbnKey() == isbnKey && cancel(hold)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancels every waiting hold on the title, e.g. when it is deleted. Returns the number cancelled.
+     */
+    public int cancelAll(long isbnKey) {
+        TitleQueue queue = byTitle.remove(isbnKey);
+        if (queue == null) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (Hold hold : queue.holds) {
+            if (cancel(hold, queue)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Waiting holds of the patron, oldest first.
+     */
+    public List<Hold> getHolds(String patronName) {
+        List<Hold> holds = byPatron.get(normalize(patronName));
+        return holds == null ? new ArrayList<>() : new ArrayList<>(holds);
+    }
+
+    public boolean hasWaiting(long isbnKey) {
+        return getWaitingCount(isbnKey) > 0;
+    }
+
+    public int getWaitingCount(long isbnKey) {
+        TitleQueue queue = byTitle.get(isbnKey);
+        return queue == null ? 0 : queue.waiting.get();
+    }
+
+    /**
+     * Place of the hold in its title's queue, 1 for next in line, or 0 if it is no longer waiting.
+     * Walks the queue up to the hold.
+     */
+    public int getPosition(Hold hold) {
+        TitleQueue queue = byTitle.get(hold.getIsbnKey());
+        if (queue == null || !hold.isWaiting()) {
+            return 0;
+        }
+        int position = 0;
+        for (Hold queued : queue.holds) {
+            if (queued.isWaiting()) {
+                position++;
+            }
+            if (queued == hold) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    public void clear() {
+        byTitle.clear();
+        byPatron.clear();
+    }
+
+    private boolean cancel(Hold hold) {
+        TitleQueue queue = byTitle.get(hold.getIsbnKey());
+        return cancel(hold, queue);
+    }
+
+    private boolean cancel(Hold hold, TitleQueue queue) {
+        if (!hold.complete(HoldStatus.CANCELLED)) {
+            return false;
+        }
+        if (queue != null) {
+            queue.waiting.decrementAndGet();
+        }
+        forget(hold);
+        return true;
+    }
+
+    private void forget(Hold hold) {
+        byPatron.computeIfPresent(normalize(hold.getPatronName()), (key, holds) -> {
+            holds.remove(hold);
+            return holds.isEmpty() ? null : holds;
+        });
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class TitleQueue {
+        final Queue<Hold> holds = new ConcurrentLinkedQueue<>();
+        final AtomicInteger waiting = new AtomicInteger();
+    }
+}
@@ -0,0 +1,80 @@
+package utils;
+
+/**
+ * Converts ISBN strings into a canonical 64-bit key.
+ * ISBN-10 values are converted to their ISBN-13 form (978 prefix), hyphens and spaces are ignored,
+ * so every spelling of the same book maps to the same key.
+ */
+public final class IsbnKey {
+    public static final long INVALID = -1L;
+
+    private IsbnKey() {
+    }
+
+    /**
+     * Returns the ISBN-13 key for the given ISBN, or {@link #INVALID} if it is not 10 or 13 digits.
+     * The check digit is not verified here, see {@link Validator#isValidISBN(String)}.
+     */
+    public static long of(String isbn) {
+        if (isbn == null) {
+            return INVALID;
+        }
+
+        long value = 0;
+        int digits = 0;
+        boolean checkIsX = false;
+
+        for (int i = 0, n = isbn.length(); i < n; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (checkIsX) {
+                return INVALID;
+            }
+            if (c >= '0' && c <= '9') {
+                if (++digits > 13) {
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+            } else if ((c == 'X' || c == 'x') && digits == 9) {
+                checkIsX = true;
+                digits++;
+            } else {
+                return INVALID;
+            }
+        }
+
+        if (digits == 13 && !checkIsX) {
+            return value;
+        }
+        if (digits == 10) {
+            long first9 = checkIsX ? value : value / 10;
+            long first12 = 978_000_000_000L + first9;
+            return first12 * 10 + isbn13CheckDigit(first12);
+        }
+        return INVALID;
+    }
+
+    /**
+     * Formats a key back into its 13 digit ISBN string.
+     */
+    public static String toIsbn13(long key) {
+        if (key < 0) {
+            return "";
+        }
+        String digits = Long.toString(key);
+        return digits.length() >= 13 ? digits : "0".repeat(13 - digits.length()) + digits;
+    }
+
+    static int isbn13CheckDigit(long first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = (int) (first12 % 10);
+            first12 /= 10;
+            // position 11 (rightmost) has weight 3, position 10 weight 1, ...
+            sum += (i % 2 == 0) ? digit * 3 : digit;
+        }
+        return (10 - (sum % 10)) % 10;
+    }
+}
@@ -0,0 +1,46 @@
+package utils;
+
+import entities.Loan;
+import managers.LoanEventListener;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Appends due soon and overdue reminders to {@code data/loan-events.log}, one line per loan.
+ * Each batch is written and flushed in one go.
+ */
+public class LoanEventLog implements LoanEventListener {
+    private static final String LOG_FILE = "data/loan-events.log";
+
+    @Override
+    public void loansDueSoon(List<Loan> loans) {
+        write("DUE_SOON", loans);
+    }
+
+    @Override
+    public void loansBecameOverdue(List<Loan> loans) {
+        write("OVERDUE", loans);
+    }
+
+    private synchronized void write(String event, List<Loan> loans) {
+        new File(LOG_FILE).getParentFile().mkdirs();
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        SimpleDateFormat day = new SimpleDateFormat("yyyy-MM-dd");
+        String now = time.format(new Date());
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
+            for (Loan loan : loans) {
+                writer.write(String.format("%s|%s|%s|%d|%s|%s%n", now, event, loan.getBook().getIsbn(),
+                        loan.getCopyId() + 1, loan.getBorrowerName(), day.format(loan.getDueDate())));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write loan events: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package utils;
+
+import entities.Loan;
+import entities.enums.Genre;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only record of every borrow and return.
+ * <p>
+ * Events are partitioned into one segment per day. A segment stores its events column by column (time, type,
+ * title, copy, genre, loan duration) in growing primitive arrays, about 30 bytes per event and no object per
+ * event. Each segment also keeps running totals (borrows, returns, borrows per genre, summed loan duration),
+ * so per day, per week and per genre reports read one set of counters per day in the range and never touch
+ * the rows. Only per title reports scan a column, and only in the segments of the requested days.
+ * <p>
+ * Segments older than the retention period are dropped as new days start, which bounds memory.
+ * Patron names are deliberately not recorded. Safe for concurrent use; appends to the same day are serialized
+ * on that day's segment.
+ */
+public class LoanHistory {
+    public static final int DEFAULT_RETENTION_DAYS = 730;
+
+    private static final byte BORROW = 0;
+    private static final byte RETURN = 1;
+    private static final Genre[] GENRES = Genre.values();
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ZoneId zone;
+    private final int retentionDays;
+
+    public LoanHistory() {
+        this(Integer.getInteger("library.history.retentionDays", DEFAULT_RETENTION_DAYS), ZoneId.systemDefault());
+    }
+
+    public LoanHistory(int retentionDays, ZoneId zone) {
+        this.retentionDays = Math.max(1, retentionDays);
+        this.zone = zone;
+    }
+
+    public void recordBorrow(Loan loan, long time) {
+        append(time, BORROW, loan, 0);
+    }
+
+    /**
+     * Records the end of the loan. The loan duration is measured from its borrow date.
+     */
+    public void recordReturn(Loan loan, long time) {
+        long duration = loan.getBorrowDate() != null ? Math.max(0, time - loan.getBorrowDate().getTime()) : -1;
+        append(time, RETURN, loan, duration);
+    }
+
+    private void append(long time, byte type, Loan loan, long duration) {
+        long day = dayOf(time);
+        long cutoff = dayOf(System.currentTimeMillis()) - retentionDays;
+        if (day <= cutoff) {
+            return;
+        }
+
+        Segment segment = segments.get(day);
+        if (segment == null) {
+            segment = segments.computeIfAbsent(day, Segment::new);
+            // a new day started, this is the moment old days can go
+            segments.headMap(cutoff, true).clear();
+        }
+        Genre genre = loan.getBook().getGenre();
+        segment.append(time, type, loan.getBook().getIsbnKey(), loan.getCopyId(),
+                (byte) (genre != null ? genre.ordinal() : -1), duration);
+    }
+
+    /**
+     * Borrows per day for the days in {@code [from, to]}, days without borrows included with 0.
+     */
+    public SortedMap<LocalDate, Long> loansPerDay(LocalDate from, LocalDate to) {
+        SortedMap<LocalDate, Long> perDay = new TreeMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            perDay.put(day, 0L);
+        }
+        for (Segment segment : range(from, to)) {
+            perDay.put(LocalDate.ofEpochDay(segment.day), (long) segment.totals().borrows);
+        }
+        return perDay;
+    }
+
+    /**
+     * Borrows per week (Monday to Sunday) for the days in {@code [from, to]}, keyed by the week's Monday.
+     * The first and last week only count the days inside the range.
+     */
+    public SortedMap<LocalDate, Long> loansPerWeek(LocalDate from, LocalDate to) {
+        SortedMap<LocalDate, Long> perWeek = new TreeMap<>();
+        for (Map.Entry<LocalDate, Long> entry : loansPerDay(from, to).entrySet()) {
+            LocalDate monday = entry.getKey().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            perWeek.merge(monday, entry.getValue(), Long::sum);
+        }
+        return perWeek;
+    }
+
+    /**
+     * Borrows per genre in {@code [from, to]}, most borrowed first. Genres without borrows are left out.
+     */
+    public Map<Genre, Long> loansByGenre(LocalDate from, LocalDate to) {
+        long[] counts = new long[GENRES.length];
+        for (Segment segment : range(from, to)) {
+            int[] byGenre = segment.totals().borrowsByGenre;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += byGenre[i];
+            }
+        }
+
+        List<Genre> genres = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                genres.add(GENRES[i]);
+            }
+        }
+        genres.sort((a, b) -> Long.compare(counts[b.ordinal()], counts[a.ordinal()]));
+        LinkedHashMap<Genre, Long> ranked = new LinkedHashMap<>();
+        for (Genre genre : genres) {
+            ranked.put(genre, counts[genre.ordinal()]);
+        }
+        return ranked;
+    }
+
+    /**
+     * Average length in days of the loans returned in {@code [from, to]}, or 0 if none were.
+     */
+    public double averageLoanDays(LocalDate from, LocalDate to) {
+        long returns = 0;
+        long total = 0;
+        for (Segment segment : range(from, to)) {
+            Totals totals = segment.totals();
+            returns += totals.timedReturns;
+            total += totals.totalDuration;
+        }
+        return returns == 0 ? 0.0 : total / (double) returns / 86_400_000.0;
+    }
+
+    /**
+     * Number of loans returned in {@code [from, to]} whose length is known, the weight of
+     * {@link #averageLoanDays(LocalDate, LocalDate)} when averages of several histories are combined.
+     */
+    public long countTimedReturns(LocalDate from, LocalDate to) {
+        long returns = 0;
+        for (Segment segment : range(from, to)) {
+            returns += segment.totals().timedReturns;
+        }
+        return returns;
+    }
+
+    /**
+     * Average loan length in days per genre, for loans returned in {@code [from, to]}.
+     * Scans the genre and duration columns of the segments in the range.
+     */
+    public Map<Genre, Double> averageLoanDaysByGenre(LocalDate from, LocalDate to) {
+        long[] returns = new long[GENRES.length];
+        long[] total = new long[GENRES.length];
+        for (Segment segment : range(from, to)) {
+            Columns columns = segment.columns();
+            for (int i = 0; i < columns.size; i++) {
+                if (columns.types[i] == RETURN && columns.genres[i] >= 0 && columns.durations[i] >= 0) {
+                    returns[columns.genres[i]]++;
+                    total[columns.genres[i]] += columns.durations[i];
+                }
+            }
+        }
+
+        Map<Genre, Double> averages = new EnumMap<>(Genre.class);
+        for (int i = 0; i < GENRES.length; i++) {
+            if (returns[i] > 0) {
+                averages.put(GENRES[i], total[i] / (double) returns[i] / 86_400_000.0);
+            }
+        }
+        return averages;
+    }
+
+    /**
+     * The n most borrowed titles in {@code [from, to]} as ISBN key to borrow count, most first.
+     * Scans the title column of the segments in the range.
+     */
+    public LinkedHashMap<Long, Long> topTitles(LocalDate from, LocalDate to, int n) {
+        LongKeyMap<long[]> counts = new LongKeyMap<>();
+        List<Long> keys = new ArrayList<>();
+        for (Segment segment : range(from, to)) {
+            Columns columns = segment.columns();
+            for (int i = 0; i < columns.size; i++) {
+                if (columns.types[i] != BORROW) {
+                    continue;
+                }
+                long[] count = counts.get(columns.isbnKeys[i]);
+                if (count == null) {
+                    count = new long[1];
+                    counts.put(columns.isbnKeys[i], count);
+                    keys.add(columns.isbnKeys[i]);
+                }
+                count[0]++;
+            }
+        }
+
+        keys.sort((a, b) -> {
+            int byCount = Long.compare(counts.get(b)[0], counts.get(a)[0]);
+            return byCount != 0 ? byCount : Long.compare(a, b);
+        });
+        LinkedHashMap<Long, Long> top = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size() && i < n; i++) {
+            top.put(keys.get(i), counts.get(keys.get(i))[0]);
+        }
+        return top;
+    }
+
+    /**
+     * Number of events kept.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.columns().size;
+        }
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Oldest day still kept, or null if nothing was recorded.
+     */
+    public LocalDate getOldestDay() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first == null ? null : LocalDate.ofEpochDay(first.getKey());
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void clear() {
+        segments.clear();
+    }
+
+    private Iterable<Segment> range(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        return segments.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values();
+    }
+
+    private long dayOf(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * One day of events. Appends and snapshots synchronize on the segment; readers then work on the snapshot,
+     * whose arrays are never written below the snapshot's size again.
+     */
+    private static class Segment {
+        final long day;
+        long[] times = new long[16];
+        byte[] types = new byte[16];
+        long[] isbnKeys = new long[16];
+        int[] copyIds = new int[16];
+        byte[] genres = new byte[16];
+        long[] durations = new long[16];
+        int size;
+
+        // running totals so whole-day reports do not read the rows
+        int borrows;
+        int timedReturns;
+        long totalDuration;
+        final int[] borrowsByGenre = new int[GENRES.length];
+
+        Segment(long day) {
+            this.day = day;
+        }
+
+        synchronized void append(long time, byte type, long isbnKey, int copyId, byte genre, long duration) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                types = Arrays.copyOf(types, capacity);
+                isbnKeys = Arrays.copyOf(isbnKeys, capacity);
+                copyIds = Arrays.copyOf(copyIds, capacity);
+                genres = Arrays.copyOf(genres, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+            }
+            times[size] = time;
+            types[size] = type;
+            isbnKeys[size] = isbnKey;
+            copyIds[size] = copyId;
+            genres[size] = genre;
+            durations[size] = duration;
+            size++;
+
+            if (type == BORROW) {
+                borrows++;
+                if (genre >= 0) {
+                    borrowsByGenre[genre]++;
+                }
+            } else {
+                if (duration >= 0) {
+                    timedReturns++;
+                    totalDuration += duration;
+                }
+            }
+        }
+
+        synchronized Columns columns() {
+            return new Columns(types, isbnKeys, genres, durations, size);
+        }
+
+        synchronized Totals totals() {
+            return new Totals(borrows, timedReturns, totalDuration, borrowsByGenre.clone());
+        }
+    }
+
+    private static class Columns {
+        final byte[] types;
+        final long[] isbnKeys;
+        final byte[] genres;
+        final long[] durations;
+        final int size;
+
+        Columns(byte[] types, long[] isbnKeys, byte[] genres, long[] durations, int size) {
+            this.types = types;
+            this.isbnKeys = isbnKeys;
+            this.genres = genres;
+            this.durations = durations;
+            this.size = size;
+        }
+    }
+
+    private static class Totals {
+        final int borrows;
+        final int timedReturns;
+        final long totalDuration;
+        final int[] borrowsByGenre;
+
+        Totals(int borrows, int timedReturns, long totalDuration, int[] borrowsByGenre) {
+            this.borrows = borrows;
+            this.timedReturns = timedReturns;
+            this.totalDuration = totalDuration;
+            this.borrowsByGenre = borrowsByGenre;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package utils;
 
 
 import entities.Book;
+import entities.Hold;
+import entities.Loan;
 import entities.enums.Genre;
 import managers.LibraryManager;
 
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -25,6 +28,8 @@ public class MenuSystem {
         System.out.println("\nWELCOME TO THE LIBRARY MANAGEMENT SYSTEM");
 
         FileHandler.loadFromFile(libraryManager);
+        libraryManager.addLoanEventListener(new LoanEventLog());
+        libraryManager.addLoanEventListener(new ConsoleLoanNotifier());
 
         while (running) {
             displayMainMenu();
@@ -44,14 +49,15 @@ public class MenuSystem {
         System.out.println("5. Filter Books (Advanced Search)");
         System.out.println("6. Library Statistics");
         System.out.println("7. Borrow/Return Book");
-        System.out.println("8. Save & Exit");
-        System.out.println("9. Exit Without Saving");
-        System.out.print("\nEnter your choice (1-9): ");
+        System.out.println("8. Bulk Import from File");
+        System.out.println("9. Save & Exit");
+        System.out.println("10. Exit Without Saving");
+        System.out.print("\nEnter your choice (1-10): ");
     }
 
     private void processMainMenuChoice() {
         String input = scanner.nextLine();
-        int choice = Validator.validateMenuChoice(input, 1, 9);
+        int choice = Validator.validateMenuChoice(input, 1, 10);
 
         switch (choice) {
             case 1:
@@ -77,9 +83,12 @@ public class MenuSystem {
                 borrowReturnMenu();
                 break;
             case 8:
-                saveAndExit();
+                bulkImportMenu();
                 break;
             case 9:
+                saveAndExit();
+                break;
+            case 10:
                 exitWithoutSaving();
                 break;
             default:
@@ -117,6 +126,14 @@ public class MenuSystem {
 
         List<Book> results = libraryManager.searchBooks(attribute, searchValue);
 
+        // nothing matched exactly, maybe a typo: try close title/author matches
+        if (results.isEmpty() && (attribute.equals("title") || attribute.equals("author"))) {
+            results = libraryManager.fuzzySearch(attribute, searchValue, 2);
+            if (!results.isEmpty()) {
+                System.out.println("\nNo exact matches. Showing similar " + attribute + "s:");
+            }
+        }
+
         if (results.isEmpty()) {
             System.out.println("\nNo books found matching your search.");
         } else {
@@ -416,11 +433,15 @@ public class MenuSystem {
     private void displayStatistics() {
         System.out.println("\n=== LIBRARY STATISTICS ===");
 
-        Map<String, Object> stats = libraryManager.getAdvancedLibraryStats(libraryManager);
+        // served from cache when the catalog has not changed since the last time
+        Map<String, Object> stats = libraryManager.getAdvancedLibraryStatsAsync().join();
 
         System.out.println("Total Books: " + stats.get("totalBooks"));
         System.out.println("Available Books: " + stats.get("availableBooks"));
         System.out.println("Borrowed Books: " + stats.get("borrowedBooks"));
+        System.out.println("Copies on Loan: " + stats.get("copiesOnLoan") + " of " + stats.get("totalCopies"));
+        System.out.println("Loans (last 30 days): " + stats.get("loansLast30Days"));
+        System.out.printf("Average Loan: %.1f days%n", (Double) stats.getOrDefault("averageLoanDays", 0.0));
 
         System.out.println("\nGenre Distribution:");
         Map<?, Long> genreCount = (Map<?, Long>) stats.get("genreDistribution");
@@ -460,6 +481,10 @@ public class MenuSystem {
         List<Book> overdueBooks = (List<Book>) stats.get("overdueBooks");
         System.out.println("\nOverdue Books: " + (overdueBooks != null ? overdueBooks.size() : 0));
 
+        Map<String, Object> cache = libraryManager.getQueryCacheStats();
+        System.out.printf("Search Cache: %s results, %.0f%% hits, %s evicted, %s invalidated%n",
+                cache.get("entries"), (Double) cache.get("hitRate") * 100, cache.get("evictions"), cache.get("invalidations"));
+
         pauseForUser();
     }
 
@@ -468,13 +493,28 @@ public class MenuSystem {
         System.out.println("\n=== BORROW/RETURN BOOK ===");
         System.out.println("1. Borrow a book");
         System.out.println("2. Return a book");
-        System.out.println("3. Back to Main Menu");
-        System.out.print("Enter your choice (1-3): ");
+        System.out.println("3. Return several books (book drop)");
+        System.out.println("4. Books borrowed by a patron");
+        System.out.println("5. Holds of a patron");
+        System.out.println("6. Back to Main Menu");
+        System.out.print("Enter your choice (1-6): ");
 
         String input = scanner.nextLine();
-        int choice = Validator.validateMenuChoice(input, 1, 3);
+        int choice = Validator.validateMenuChoice(input, 1, 6);
 
-        if (choice == 3) return;
+        if (choice == 6) return;
+        if (choice == 3) {
+            returnSeveralBooks();
+            return;
+        }
+        if (choice == 4) {
+            showPatronLoans();
+            return;
+        }
+        if (choice == 5) {
+            showPatronHolds();
+            return;
+        }
 
         System.out.print("Enter ISBN of the book: ");
         String isbn = scanner.nextLine().trim();
@@ -487,29 +527,175 @@ public class MenuSystem {
         }
 
         if (choice == 1) {
-            if (!book.isAvailable()) {
-                System.out.println("This book is already borrowed by: " + book.getBorrowerName());
+            if (libraryManager.getHoldCount(isbn) > 0) {
+                System.out.println("Free copies go to the patrons waiting for this book first.");
+                offerHold(isbn);
+            } else if (!book.isAvailable()) {
+                if (book.getTotalCopies() == 1) {
+                    System.out.println("No copy available, borrowed by: " + book.getBorrowerName());
+                } else {
+                    System.out.println("No copy available, all " + book.getTotalCopies() + " copies are out.");
+                }
+                offerHold(isbn);
             } else {
                 System.out.print("Enter borrower name (LastName_FirstName): ");
                 String borrowerName = scanner.nextLine().trim();
                 if (Validator.isValidName(borrowerName)) {
-                    book.borrowBook(borrowerName);
-                    System.out.println("Book borrowed successfully!");
-                    System.out.println(book);
+                    // another terminal or the GUI may have taken the last copy in the meantime
+                    Loan loan = libraryManager.borrowCopy(isbn, borrowerName, null);
+                    if (loan != null) {
+                        System.out.println("Book borrowed successfully!");
+                        System.out.println(loan);
+                    } else {
+                        System.out.println("No copy available anymore.");
+                        offerHold(isbn);
+                    }
                 } else {
                     System.out.println(Validator.getErrorMessage("borrower"));
                 }
             }
         } else {
-            if (book.isAvailable()) {
+            // with several copies a title can be on the shelf and out on loan at the same time
+            LibraryManager.Returned returned = book.getLoans().isEmpty() ? null : libraryManager.returnCopy(isbn, -1);
+            if (returned == null) {
                 System.out.println("This book is not currently borrowed.");
             } else {
-                book.returnBook();
                 System.out.println("Book returned successfully!");
-                System.out.println(book);
+                System.out.println(returned.getLoan());
+                Loan next = returned.getHeldFor();
+                if (next != null) {
+                    System.out.println("The copy goes to " + next.getBorrowerName() + ", who had it on hold (Due: "
+                            + new SimpleDateFormat("yyyy-MM-dd").format(next.getDueDate()) + ").");
+                }
+            }
+        }
+
+        pauseForUser();
+    }
+
+    private void showPatronLoans() {
+        System.out.print("Enter borrower name: ");
+        String borrowerName = scanner.nextLine().trim();
+
+        List<Loan> loans = libraryManager.getLoansFor(borrowerName);
+        if (loans.isEmpty()) {
+            System.out.println(borrowerName + " has no books out.");
+        } else {
+            System.out.println("\n" + borrowerName + " has " + loans.size() + " book(s) out:");
+            for (int i = 0; i < loans.size(); i++) {
+                System.out.println((i + 1) + ". " + loans.get(i));
+            }
+        }
+
+        pauseForUser();
+    }
+
+    private void offerHold(String isbn) {
+        System.out.println("Patrons waiting: " + libraryManager.getHoldCount(isbn));
+        System.out.print("Place a hold? (yes/no): ");
+        String answer = scanner.nextLine().trim().toLowerCase();
+        if (!answer.equals("yes") && !answer.equals("y")) {
+            return;
+        }
+
+        System.out.print("Enter patron name (LastName_FirstName): ");
+        String patronName = scanner.nextLine().trim();
+        if (!Validator.isValidName(patronName)) {
+            System.out.println(Validator.getErrorMessage("borrower"));
+            return;
+        }
+
+        Hold hold = libraryManager.placeHold(isbn, patronName);
+        if (hold == null) {
+            System.out.println(patronName + " is already waiting for this book.");
+        } else if (hold.getLoan() != null) {
+            System.out.println("A copy was free, it has been lent right away:");
+            System.out.println(hold.getLoan());
+        } else {
+            System.out.println("Hold placed. Position in line: " + libraryManager.getHoldPosition(hold));
+        }
+    }
+
+    private void showPatronHolds() {
+        System.out.print("Enter patron name: ");
+        String patronName = scanner.nextLine().trim();
+
+        List<Hold> holds = libraryManager.getHoldsFor(patronName);
+        if (holds.isEmpty()) {
+            System.out.println(patronName + " is not waiting for any book.");
+            pauseForUser();
+            return;
+        }
+
+        System.out.println("\n" + patronName + " is waiting for " + holds.size() + " book(s):");
+        for (int i = 0; i < holds.size(); i++) {
+            Hold hold = holds.get(i);
+            Book book = libraryManager.getBookByIsbn(hold.getIsbn());
+            System.out.printf("%d. %s - position %d%n", i + 1,
+                    book != null ? book.getTitle() : hold.getIsbn(), libraryManager.getHoldPosition(hold));
+        }
+
+        System.out.print("Enter a number to cancel that hold, or press Enter to go back: ");
+        String line = scanner.nextLine().trim();
+        if (!line.isEmpty()) {
+            int index = Validator.validateMenuChoice(line, 1, holds.size());
+            if (index > 0 && libraryManager.cancelHold(holds.get(index - 1).getIsbn(), patronName)) {
+                System.out.println("Hold cancelled.");
+            } else {
+                System.out.println("Nothing cancelled.");
+            }
+        }
+
+        pauseForUser();
+    }
+
+    private void returnSeveralBooks() {
+        System.out.print("Enter ISBNs separated by commas or spaces: ");
+        String line = scanner.nextLine().trim();
+
+        List<String> isbns = new ArrayList<>();
+        for (String isbn : line.split("[,\\s]+")) {
+            if (!isbn.isEmpty()) {
+                isbns.add(isbn);
             }
         }
 
+        if (isbns.isEmpty()) {
+            System.out.println("No ISBNs given.");
+        } else {
+            int returned = libraryManager.returnBooks(isbns);
+            System.out.println("Returned " + returned + " of " + isbns.size() + " book(s).");
+        }
+
+        pauseForUser();
+    }
+
+
+    private void bulkImportMenu() {
+        System.out.println("\n=== BULK IMPORT ===");
+        System.out.println("Feed columns: ISBN, Title, Author, Publisher, Year, Genre (comma or pipe separated)");
+        System.out.print("Enter path of the feed file: ");
+        String path = scanner.nextLine().trim();
+        if (!Validator.isNotEmpty(path)) {
+            System.out.println("No file given.");
+            return;
+        }
+
+        String defaultRejects = path + ".rejected";
+        System.out.print("Rejected rows file [" + defaultRejects + "]: ");
+        String rejectPath = scanner.nextLine().trim();
+        if (rejectPath.isEmpty()) {
+            rejectPath = defaultRejects;
+        }
+
+        try {
+            BulkImporter.Result result = new BulkImporter(libraryManager).importFile(path, rejectPath);
+            System.out.println("\nImport finished.");
+            System.out.println(result);
+        } catch (Exception e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+
         pauseForUser();
     }
 
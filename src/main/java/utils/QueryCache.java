@@ -0,0 +1,235 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded LRU cache of query results with per-field invalidation.
+ * <p>
+ * The cache keeps a version counter per book field group: ISBN, title, author, publisher, year, genre,
+ * circulation (availability, copies and loans) and one for the catalog itself (books added, removed, reordered
+ * or reloaded). The owner bumps a counter after changing the field. A result is stored together with the
+ * versions of the fields its query reads, taken before the query ran, and is served only while all of them
+ * are unchanged. A title search therefore survives any amount of borrow and return traffic, while an
+ * "available" filter is recomputed after the next checkout.
+ * <p>
+ * Stale entries are dropped when looked up. The cache holds at most a number of entries and a total weight
+ * (for book lists, the number of books over all cached lists); least recently used entries are evicted first.
+ * Safe for concurrent use.
+ */
+public class QueryCache<V> {
+    private static final String[] FIELDS = {"isbn", "title", "author", "publisher", "year", "genre"};
+    private static final int CIRCULATION = FIELDS.length;
+    private static final int CATALOG = FIELDS.length + 1;
+
+    private final AtomicLongArray versions = new AtomicLongArray(FIELDS.length + 2);
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public QueryCache(int maxEntries, long maxWeight, ToIntFunction<V> weigher) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxWeight = Math.max(0, maxWeight);
+        this.weigher = weigher;
+    }
+
+    /**
+     * Versions of the given fields and of the catalog right now. Take it before running the query the result
+     * will be stored for, so a change that races with the query makes the entry stale instead of wrong.
+     * Fields whose value never changes (unknown names) are ignored.
+     */
+    public Stamp stamp(Iterable<String> fields) {
+        int[] ids = new int[FIELDS.length + 2];
+        int count = 0;
+        boolean[] seen = new boolean[ids.length];
+        for (String field : fields) {
+            int id = fieldId(field);
+            if (id >= 0 && !seen[id]) {
+                seen[id] = true;
+                ids[count++] = id;
+            }
+        }
+        ids[count++] = CATALOG;
+
+        int[] used = Arrays.copyOf(ids, count);
+        long[] stamp = new long[count];
+        for (int i = 0; i < count; i++) {
+            stamp[i] = versions.get(used[i]);
+        }
+        return new Stamp(used, stamp);
+    }
+
+    /**
+     * True while none of the versions in the stamp has changed.
+     */
+    public boolean isCurrent(Stamp stamp) {
+        return stamp.isCurrent(versions);
+    }
+
+    /**
+     * The cached result for the key, or null if there is none or it is stale.
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (!entry.stamp.isCurrent(versions)) {
+            entries.remove(key);
+            weight -= entry.weight;
+            invalidations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a result computed after {@code stamp} was taken. Results heavier than the whole cache are not kept.
+     */
+    public synchronized void put(String key, Stamp stamp, V value) {
+        int valueWeight = weigher.applyAsInt(value);
+        if (maxEntries == 0 || valueWeight > maxWeight || !stamp.isCurrent(versions)) {
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, stamp, valueWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            Entry<V> evicted = eldest.next();
+            eldest.remove();
+            weight -= evicted.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * Marks a field as changed on some book. Loan related fields (available, copies, borrower, dates) all count
+     * as circulation.
+     */
+    public void fieldChanged(String field) {
+        int id = fieldId(field);
+        if (id >= 0) {
+            versions.incrementAndGet(id);
+        }
+    }
+
+    /**
+     * A copy was lent or returned.
+     */
+    public void circulationChanged() {
+        versions.incrementAndGet(CIRCULATION);
+    }
+
+    /**
+     * Books were added, removed, reordered or the catalog was replaced; every entry becomes stale.
+     */
+    public void catalogChanged() {
+        versions.incrementAndGet(CATALOG);
+    }
+
+    /**
+     * Entries, weight, hits, misses, hit rate, evictions (for room) and invalidations (stale on lookup).
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits + misses;
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("weight", weight);
+        stats.put("maxWeight", maxWeight);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups == 0 ? 0.0 : hits / (double) lookups);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    private static int fieldId(String field) {
+        switch (field.toLowerCase(Locale.ROOT)) {
+            case "isbn":
+                return 0;
+            case "title":
+                return 1;
+            case "author":
+                return 2;
+            case "publisher":
+                return 3;
+            case "year":
+            case "publicationyear":
+                return 4;
+            case "genre":
+                return 5;
+            case "available":
+            case "isavailable":
+            case "copies":
+            case "totalcopies":
+            case "availablecopies":
+            case "borrower":
+            case "borrowername":
+            case "borrowdate":
+            case "returnduedate":
+                return CIRCULATION;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Field versions a result depends on.
+     */
+    public static final class Stamp {
+        private final int[] fields;
+        private final long[] versions;
+
+        private Stamp(int[] fields, long[] versions) {
+            this.fields = fields;
+            this.versions = versions;
+        }
+
+        boolean isCurrent(AtomicLongArray current) {
+            for (int i = 0; i < fields.length; i++) {
+                if (current.get(fields[i]) != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final Stamp stamp;
+        final int weight;
+
+        Entry(V value, Stamp stamp, int weight) {
+            this.value = value;
+            this.stamp = stamp;
+            this.weight = weight;
+        }
+    }
+}
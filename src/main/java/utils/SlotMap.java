@@ -0,0 +1,280 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Slot based storage with stable integer row ids.
+ * <p>
+ * Removing an element only clears (tombstones) its slot, so deletes are O(1) and no other element moves.
+ * Freed slots are reused by later inserts. Row ids stay valid until {@link #compact()} or
+ * {@link #reorder(Comparator)} renumbers the storage; {@link #getGeneration()} changes whenever that happens.
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class SlotMap<T> {
+    private Object[] slots;
+    private int[] freeSlots;
+    private int freeCount;
+    private int highWater;
+    private int size;
+    private int generation;
+
+    public SlotMap() {
+        this(16);
+    }
+
+    public SlotMap(int initialCapacity) {
+        this.slots = new Object[Math.max(4, initialCapacity)];
+        this.freeSlots = new int[16];
+    }
+
+    /**
+     * Stores the element and returns its row id.
+     */
+    public int add(T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("SlotMap does not store null");
+        }
+
+        int row;
+        if (freeCount > 0) {
+            row = freeSlots[--freeCount];
+        } else {
+            if (highWater == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length + (slots.length >> 1) + 1);
+            }
+            row = highWater++;
+        }
+        slots[row] = element;
+        size++;
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int row) {
+        return row >= 0 && row < highWater ? (T) slots[row] : null;
+    }
+
+    /**
+     * Tombstones the slot and returns the element that was stored there.
+     */
+    @SuppressWarnings("unchecked")
+    public T remove(int row) {
+        if (row < 0 || row >= highWater || slots[row] == null) {
+            return null;
+        }
+        T element = (T) slots[row];
+        slots[row] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length << 1);
+        }
+        freeSlots[freeCount++] = row;
+        size--;
+        return element;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * One past the highest row id in use. Rows below it are either live or tombstoned ({@link #get(int)} returns null).
+     */
+    public int getRowLimit() {
+        return highWater;
+    }
+
+    /**
+     * Number of tombstoned slots waiting to be reused or compacted away.
+     */
+    public int getTombstones() {
+        return highWater - size;
+    }
+
+    /**
+     * Share of used slots that are tombstones, between 0 and 1.
+     */
+    public double getFragmentation() {
+        return highWater == 0 ? 0 : (double) (highWater - size) / highWater;
+    }
+
+    /**
+     * Incremented every time row ids are renumbered.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Packs the live elements to the front, keeping their relative order. Renumbers row ids.
+     */
+    public void compact() {
+        rebuild(toList());
+    }
+
+    /**
+     * Renumbers storage so that row order follows the comparator.
+     */
+    public void reorder(Comparator<? super T> comparator) {
+        ArrayList<T> live = toList();
+        live.sort(comparator);
+        rebuild(live);
+    }
+
+    private void rebuild(ArrayList<T> live) {
+        // a fresh array is swapped in, so anyone still walking the old one is not disturbed
+        Object[] packed = new Object[Math.max(16, live.size() + (live.size() >> 2))];
+        for (int i = 0; i < live.size(); i++) {
+            packed[i] = live.get(i);
+        }
+        slots = packed;
+        highWater = live.size();
+        size = live.size();
+        freeCount = 0;
+        generation++;
+    }
+
+    public void clear() {
+        slots = new Object[16];
+        freeCount = 0;
+        highWater = 0;
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * Visits live elements in row order together with their row id.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<T> action) {
+        for (int row = 0; row < highWater; row++) {
+            Object element = slots[row];
+            if (element != null) {
+                action.accept((T) element, row);
+            }
+        }
+    }
+
+    /**
+     * Lazy spliterator over the live elements in row order, for use outside the owner's lock.
+     * <p>
+     * It walks the rows in use when it was created, copying a chunk of elements at a time while holding
+     * {@code guard}, and hands them to the consumer after releasing it, so consumers may call back into the owner.
+     * A {@link #compact()} or {@link #reorder(Comparator)} in between does not disturb it because they swap in a
+     * fresh array; the walk continues over the old rows. Removals and inserts into freed slots made during the
+     * walk may or may not be seen. Splits halve the remaining row range. Must be created with {@code guard} held.
+     */
+    public Spliterator<T> spliterator(Lock guard) {
+        return new RowSpliterator<>(slots, 0, highWater, guard);
+    }
+
+    /**
+     * Copies the live elements in row order.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<T> toList() {
+        ArrayList<T> list = new ArrayList<>(size);
+        for (int row = 0; row < highWater; row++) {
+            if (slots[row] != null) {
+                list.add((T) slots[row]);
+            }
+        }
+        return list;
+    }
+
+    private static final class RowSpliterator<T> implements Spliterator<T> {
+        private static final int CHUNK = 256;
+        private static final int MIN_SPLIT = 4 * CHUNK;
+
+        private final Object[] rows;
+        private final Lock guard;
+        private final Object[] chunk = new Object[CHUNK];
+        private int next;
+        private final int fence;
+        private int chunkPosition;
+        private int chunkSize;
+
+        RowSpliterator(Object[] rows, int origin, int fence, Lock guard) {
+            this.rows = rows;
+            this.next = origin;
+            this.fence = fence;
+            this.guard = guard;
+        }
+
+        /**
+         * Copies the next live elements into the chunk. Returns false once the rows are exhausted.
+         */
+        private boolean fill() {
+            chunkPosition = 0;
+            chunkSize = 0;
+            guard.lock();
+            try {
+                while (next < fence && chunkSize < CHUNK) {
+                    Object element = rows[next++];
+                    if (element != null) {
+                        chunk[chunkSize++] = element;
+                    }
+                }
+            } finally {
+                guard.unlock();
+            }
+            return chunkSize > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (chunkPosition == chunkSize && !fill()) {
+                return false;
+            }
+            T element = (T) chunk[chunkPosition];
+            chunk[chunkPosition++] = null;
+            action.accept(element);
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super T> action) {
+            do {
+                while (chunkPosition < chunkSize) {
+                    T element = (T) chunk[chunkPosition];
+                    chunk[chunkPosition++] = null;
+                    action.accept(element);
+                }
+            } while (fill());
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int remaining = fence - next;
+            // elements already copied come before any split off prefix, so only split between chunks
+            if (remaining < MIN_SPLIT || chunkPosition < chunkSize) {
+                return null;
+            }
+            int middle = next + (remaining >>> 1);
+            Spliterator<T> prefix = new RowSpliterator<>(rows, next, middle, guard);
+            next = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - next + chunkSize - chunkPosition;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+}
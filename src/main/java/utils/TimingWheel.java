@@ -0,0 +1,174 @@
+package utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel.
+ * <p>
+ * Time is cut into ticks. Level 0 has 64 slots of one tick, level 1 has 64 slots of 64 ticks, and so on for six
+ * levels, which covers over two thousand years at one second per tick. A timeout goes into the lowest level
+ * whose span reaches its deadline, in the slot of its deadline. Each slot is a doubly linked list, so
+ * scheduling and cancelling are O(1). Whenever level 0 wraps around, the next slot of level 1 is emptied
+ * into the lower level (and likewise further up), so every timeout is moved at most once per level before it
+ * fires. Advancing by one tick therefore costs O(1) plus the timeouts that fire or move down.
+ * Not thread safe, the owner is expected to drive it from one thread.
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+    private final Timeout<T>[][] slots;
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.currentTick = Math.floorDiv(startMillis, this.tickMillis);
+        @SuppressWarnings("unchecked")
+        Timeout<T>[][] slots = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+        this.slots = slots;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                // sentinels, the lists are circular
+                Timeout<T> head = new Timeout<>(null, 0);
+                head.prev = head;
+                head.next = head;
+                slots[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Schedules the payload to fire at the first tick at or after the deadline.
+     * A deadline in the past fires on the next tick.
+     */
+    public Timeout<T> schedule(long deadlineMillis, T payload) {
+        Timeout<T> timeout = new Timeout<>(payload, Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis));
+        place(timeout, timeout.deadlineTick <= currentTick ? currentTick + 1 : timeout.deadlineTick);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes the timeout. Returns false if it already fired or was cancelled.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.prev == null) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves time forward tick by tick up to the given time and hands every payload that comes due to the
+     * consumer, earliest tick first.
+     */
+    public void advanceTo(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            Timeout<T> head = slots[0][(int) (currentTick & MASK)];
+            Timeout<T> timeout = head.next;
+            while (timeout != head) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                if (timeout.deadlineTick <= currentTick) {
+                    size--;
+                    expired.accept(timeout.payload);
+                } else {
+                    place(timeout, timeout.deadlineTick);
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Number of scheduled timeouts.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Empties the slots of the higher levels that the current tick just reached, highest level first, so
+     * timeouts moving down several levels in one tick are still picked up.
+     */
+    private void cascade() {
+        int top = 0;
+        while (top < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            Timeout<T> head = slots[level][(int) ((currentTick >>> (SLOT_BITS * level)) & MASK)];
+            Timeout<T> timeout = head.next;
+            while (timeout != head) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                place(timeout, Math.max(timeout.deadlineTick, currentTick));
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Links the timeout into the slot for the given tick. Ticks beyond the top level's reach are parked at the
+     * farthest slot and placed again when that slot cascades.
+     */
+    private void place(Timeout<T> timeout, long tick) {
+        long delta = Math.min(tick - currentTick, MAX_DELTA);
+        long target = currentTick + delta;
+        int level = delta < SLOTS ? 0 : (63 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+        Timeout<T> head = slots[level][(int) ((target >>> (SLOT_BITS * level)) & MASK)];
+
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    private static <T> void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Handle of a scheduled payload, used to cancel it.
+     */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        /**
+         * True until the timeout fires or is cancelled.
+         */
+        public boolean isPending() {
+            return prev != null;
+        }
+    }
+}
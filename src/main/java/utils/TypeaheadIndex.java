@@ -0,0 +1,423 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix index for search box suggestions.
+ * <p>
+ * Values are stored in a radix trie (edges carry whole substrings, so long unique tails cost one node).
+ * Equal values (compared case-insensitively) share one term whose score is the sum of the scores they were
+ * added with, e.g. the borrow counts of all books by one author. Every node whose subtree holds more than
+ * {@code k} terms caches its {@code k} best terms, so {@link #suggest(String, int)} only walks the prefix and
+ * reads one cache. Adding, removing or rescoring a term refreshes the caches on its path to the root.
+ * Not thread safe, the owner is expected to guard it.
+ */
+public class TypeaheadIndex {
+    public static final int DEFAULT_K = 10;
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final int k;
+    private Node root = new Node("", null);
+    private int termCount;
+
+    public TypeaheadIndex() {
+        this(DEFAULT_K);
+    }
+
+    public TypeaheadIndex(int k) {
+        this.k = Math.max(1, k);
+    }
+
+    /**
+     * Adds one occurrence of the value. Blank values are ignored.
+     */
+    public void add(String value, long score) {
+        String key = normalize(value);
+        if (key.isEmpty()) {
+            return;
+        }
+        refreshPath(insert(key, value, score));
+    }
+
+    /**
+     * Removes one occurrence of the value together with the score it contributed.
+     */
+    public void remove(String value, long score) {
+        String key = normalize(value);
+        Node node = key.isEmpty() ? null : find(key, true);
+        if (node == null || node.term == null) {
+            return;
+        }
+
+        Term term = node.term;
+        term.score -= score;
+        if (--term.occurrences > 0) {
+            refreshPath(node);
+            return;
+        }
+
+        node.term = null;
+        termCount--;
+        for (Node n = node; n != null; n = n.parent) {
+            n.terms--;
+        }
+        refreshPath(prune(node));
+    }
+
+    /**
+     * Changes the score of a value that is already indexed, e.g. after the book was borrowed again.
+     */
+    public void addScore(String value, long delta) {
+        String key = normalize(value);
+        Node node = key.isEmpty() ? null : find(key, true);
+        if (node != null && node.term != null && delta != 0) {
+            node.term.score += delta;
+            refreshPath(node);
+        }
+    }
+
+    /**
+     * Moves one occurrence from the old value to the new one, for renames.
+     */
+    public void replace(String oldValue, String newValue, long score) {
+        if (normalize(oldValue).equals(normalize(newValue))) {
+            return;
+        }
+        remove(oldValue, score);
+        add(newValue, score);
+    }
+
+    /**
+     * Best completions of the prefix, highest score first and alphabetical among equal scores.
+     * At most {@code k} are returned, however large the limit.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        List<Suggestion> result = new ArrayList<>();
+        String key = normalize(prefix);
+        Node node = key.isEmpty() ? null : find(key, false);
+        if (node == null || limit <= 0) {
+            return result;
+        }
+
+        Term[] best = node.top;
+        int size = best != null ? best.length : 0;
+        if (best == null) {
+            best = new Term[k];
+            size = offerSubtree(node, best, 0);
+        }
+        for (int i = 0; i < size && i < limit; i++) {
+            result.add(new Suggestion(best[i].display, best[i].score, best[i].occurrences));
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the content in one pass; caches are computed bottom-up once at the end instead of per value.
+     * Values and scores are parallel lists.
+     */
+    public void rebuild(List<String> values, long[] scores) {
+        clear();
+        for (int i = 0; i < values.size(); i++) {
+            String key = normalize(values.get(i));
+            if (!key.isEmpty()) {
+                insert(key, values.get(i), scores[i]);
+            }
+        }
+        refreshSubtree(root);
+    }
+
+    public void clear() {
+        root = new Node("", null);
+        termCount = 0;
+    }
+
+    /**
+     * Number of distinct terms.
+     */
+    public int size() {
+        return termCount;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the node whose path is exactly the key, or without {@code exact} the first node whose path starts with it.
+     */
+    private Node find(String key, boolean exact) {
+        Node node = root;
+        int pos = 0;
+        while (pos < key.length()) {
+            Node child = node.child(key.charAt(pos));
+            if (child == null) {
+                return null;
+            }
+            String label = child.label;
+            int common = commonPrefix(label, key, pos);
+            if (common < label.length()) {
+                // the key ends inside this edge
+                return !exact && pos + common == key.length() ? child : null;
+            }
+            pos += common;
+            node = child;
+        }
+        return node;
+    }
+
+    private Node insert(String key, String display, long score) {
+        Node node = root;
+        int pos = 0;
+        while (pos < key.length()) {
+            Node child = node.child(key.charAt(pos));
+            if (child == null) {
+                child = new Node(key.substring(pos), node);
+                node.addChild(child);
+                node = child;
+                break;
+            }
+            int common = commonPrefix(child.label, key, pos);
+            if (common < child.label.length()) {
+                child = split(child, common);
+            }
+            pos += common;
+            node = child;
+        }
+
+        if (node.term == null) {
+            node.term = new Term(key, display);
+            termCount++;
+            for (Node n = node; n != null; n = n.parent) {
+                n.terms++;
+            }
+        }
+        node.term.occurrences++;
+        node.term.score += score;
+        return node;
+    }
+
+    /**
+     * Cuts the edge into the child after {@code at} characters and returns the new middle node.
+     */
+    private Node split(Node child, int at) {
+        Node parent = child.parent;
+        Node middle = new Node(child.label.substring(0, at), parent);
+        middle.terms = child.terms;
+        middle.top = child.top;
+        parent.replaceChild(child, middle);
+
+        child.label = child.label.substring(at);
+        child.parent = middle;
+        middle.addChild(child);
+        return middle;
+    }
+
+    /**
+     * Drops nodes left without a term or children and merges single-child nodes into their child.
+     * Returns the lowest surviving node, from where caches must be refreshed.
+     */
+    private Node prune(Node node) {
+        while (node != root && node.term == null) {
+            Node parent = node.parent;
+            if (node.childCount == 0) {
+                parent.removeChild(node);
+                node = parent;
+            } else if (node.childCount == 1) {
+                Node only = node.children[0];
+                only.label = node.label + only.label;
+                only.parent = parent;
+                parent.replaceChild(node, only);
+                return parent;
+            } else {
+                return node;
+            }
+        }
+        return node;
+    }
+
+    private void refreshPath(Node node) {
+        for (Node n = node; n != null; n = n.parent) {
+            n.top = n.terms > k ? bestOf(n) : null;
+        }
+    }
+
+    private void refreshSubtree(Node node) {
+        for (int i = 0; i < node.childCount; i++) {
+            refreshSubtree(node.children[i]);
+        }
+        node.top = node.terms > k ? bestOf(node) : null;
+    }
+
+    /**
+     * The node's own term plus the best terms of each child (their cache, or all their terms if they hold
+     * no more than k), cut to the best k.
+     */
+    private Term[] bestOf(Node node) {
+        Term[] best = new Term[k];
+        int size = 0;
+        if (node.term != null) {
+            best[size++] = node.term;
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            Node child = node.children[i];
+            if (child.top == null) {
+                size = offerSubtree(child, best, size);
+                continue;
+            }
+            // a cache is already ranked, so the rest of it cannot beat the current k-th best either
+            for (Term term : child.top) {
+                if (size == k && !ranksBefore(term, best[k - 1])) {
+                    break;
+                }
+                size = offer(best, size, term);
+            }
+        }
+        return size == k ? best : Arrays.copyOf(best, size);
+    }
+
+    private int offerSubtree(Node node, Term[] best, int size) {
+        if (node.term != null) {
+            size = offer(best, size, node.term);
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            size = offerSubtree(node.children[i], best, size);
+        }
+        return size;
+    }
+
+    /**
+     * Insertion into a ranked array of at most k terms. Returns the new size.
+     */
+    private int offer(Term[] best, int size, Term term) {
+        int pos;
+        if (size < k) {
+            pos = size++;
+        } else if (ranksBefore(term, best[k - 1])) {
+            pos = k - 1;
+        } else {
+            return size;
+        }
+        while (pos > 0 && ranksBefore(term, best[pos - 1])) {
+            best[pos] = best[pos - 1];
+            pos--;
+        }
+        best[pos] = term;
+        return size;
+    }
+
+    /**
+     * Higher score first, then alphabetical.
+     */
+    private static boolean ranksBefore(Term a, Term b) {
+        return a.score != b.score ? a.score > b.score : a.key.compareTo(b.key) < 0;
+    }
+
+    private static int commonPrefix(String label, String key, int from) {
+        int max = Math.min(label.length(), key.length() - from);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Term {
+        final String key;
+        final String display;
+        long score;
+        int occurrences;
+
+        Term(String key, String display) {
+            this.key = key;
+            this.display = display.trim();
+        }
+    }
+
+    private static class Node {
+        String label;
+        Node parent;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+        Term term;
+        int terms;
+        Term[] top;
+
+        Node(String label, Node parent) {
+            this.label = label;
+            this.parent = parent;
+        }
+
+        /**
+         * Children are kept sorted by the first character of their label.
+         */
+        int indexOf(char c) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label.charAt(0);
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        Node child(char c) {
+            int index = indexOf(c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void addChild(Node child) {
+            int insertAt = -(indexOf(child.label.charAt(0)) + 1);
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+            children[insertAt] = child;
+            childCount++;
+        }
+
+        void removeChild(Node child) {
+            int index = indexOf(child.label.charAt(0));
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            children[--childCount] = null;
+        }
+
+        void replaceChild(Node oldChild, Node newChild) {
+            children[indexOf(oldChild.label.charAt(0))] = newChild;
+        }
+    }
+
+    /**
+     * One completion: the value as first added, its total score and how many entries share it.
+     */
+    public static class Suggestion {
+        private final String text;
+        private final long score;
+        private final int count;
+
+        Suggestion(String text, long score, int count) {
+            this.text = text;
+            this.score = score;
+            this.count = count;
+        }
+
+        public String getText() { return text; }
+        public long getScore() { return score; }
+        public int getCount() { return count; }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
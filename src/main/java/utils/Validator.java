@@ -1,87 +1,158 @@
 package utils;
 
 import java.util.Calendar;
-import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 
 public class Validator {
 
+    public static final int FIELD_ISBN = 0;
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_AUTHOR = 2;
+    public static final int FIELD_PUBLISHER = 3;
+    public static final int FIELD_YEAR = 4;
+    public static final int FIELD_GENRE = 5;
+    public static final int FIELD_COUNT = 6;
+
+    /** Error bits returned by {@link #validateRecord(String[])}, one per field. */
+    public static final int ERR_ISBN = 1 << FIELD_ISBN;
+    public static final int ERR_TITLE = 1 << FIELD_TITLE;
+    public static final int ERR_AUTHOR = 1 << FIELD_AUTHOR;
+    public static final int ERR_PUBLISHER = 1 << FIELD_PUBLISHER;
+    public static final int ERR_YEAR = 1 << FIELD_YEAR;
+    public static final int ERR_GENRE = 1 << FIELD_GENRE;
+
+    private static final String[] FIELD_NAMES = {"isbn", "title", "author", "publisher", "year", "genre"};
+
+    private static volatile int cachedYear;
+    private static volatile long cachedYearUntil;
+
     /**
-     * Validates ISBN format (10 or 13 digits)
+     * Validates ISBN format and check digit. Accepts the same spellings as {@link IsbnKey#of(String)}
+     * (10 or 13 digits, hyphens and spaces allowed, ISBN-10 may end with X or x), so every ISBN that
+     * passes has a key.
      */
     public static boolean isValidISBN(String isbn) {
-        if (isbn == null || isbn.trim().isEmpty()) {
+        if (isbn == null) {
             return false;
         }
 
-        String cleanISBN = isbn.replaceAll("-", "");
-
-        if (!cleanISBN.matches("\\d{10}|\\d{13}")) {
-            return false;
-        }
-
-        if (cleanISBN.length() == 10) {
-            return isValidISBN10(cleanISBN);
-        }
+        int digits = 0;
+        int sum10 = 0;
+        int sum13 = 0;
+        boolean checkIsX = false;
 
-        if (cleanISBN.length() == 13) {
-            return isValidISBN13(cleanISBN);
-        }
+        for (int i = 0, n = isbn.length(); i < n; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (checkIsX) {
+                return false;
+            }
 
-        return true;
-    }
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if ((c == 'X' || c == 'x') && digits == 9) {
+                digit = 10;
+                checkIsX = true;
+            } else {
+                return false;
+            }
 
-    private static boolean isValidISBN10(String isbn) {
-        int sum = 0;
-        for (int i = 0; i < 9; i++) {
-            sum += (10 - i) * Character.getNumericValue(isbn.charAt(i));
+            if (digits >= 13) {
+                return false;
+            }
+            sum10 += (10 - digits) * digit;
+            sum13 += (digits % 2 == 0) ? digit : digit * 3;
+            digits++;
         }
 
-        char lastChar = isbn.charAt(9);
-        if (lastChar == 'X') {
-            sum += 10;
-        } else {
-            sum += Character.getNumericValue(lastChar);
+        if (digits == 10) {
+            return sum10 % 11 == 0;
         }
-
-        return sum % 11 == 0;
-    }
-
-    private static boolean isValidISBN13(String isbn) {
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Character.getNumericValue(isbn.charAt(i));
-            sum += (i % 2 == 0) ? digit : digit * 3;
+        if (digits == 13) {
+            return !checkIsX && sum13 % 10 == 0;
         }
-
-        int checkDigit = Character.getNumericValue(isbn.charAt(12));
-        return (10 - (sum % 10)) % 10 == checkDigit;
+        return false;
     }
 
     /**
      * Validates name format (LastName_FirstName)
      */
     public static boolean isValidName(String name) {
-        if (name == null || name.trim().isEmpty()) {
+        if (name == null) {
             return false;
         }
-        Pattern pattern = Pattern.compile("^[A-Za-z]+_[A-Za-z]+$");
-        return pattern.matcher(name).matches();
+
+        int n = name.length();
+        int underscore = -1;
+        for (int i = 0; i < n; i++) {
+            char c = name.charAt(i);
+            if (c == '_') {
+                if (underscore >= 0) {
+                    return false;
+                }
+                underscore = i;
+            } else if (!isAsciiLetter(c)) {
+                return false;
+            }
+        }
+        return underscore > 0 && underscore < n - 1;
     }
 
     public static boolean isValidYear(String yearStr) {
-        try {
-            int year = Integer.parseInt(yearStr);
-            int currentYear = Calendar.getInstance().get(Calendar.YEAR);
-            return year >= 1000 && year <= currentYear + 1;
-        } catch (NumberFormatException e) {
+        if (yearStr == null) {
             return false;
         }
+
+        int n = yearStr.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0 && (yearStr.charAt(0) == '-' || yearStr.charAt(0) == '+')) {
+            negative = yearStr.charAt(0) == '-';
+            i = 1;
+        }
+        if (i == n || n - i > 9) {
+            return false;
+        }
+
+        int year = 0;
+        for (; i < n; i++) {
+            char c = yearStr.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            year = year * 10 + (c - '0');
+        }
+        if (negative) {
+            year = -year;
+        }
+        return year >= 1000 && year <= currentYear() + 1;
+    }
+
+    private static int currentYear() {
+        long now = System.currentTimeMillis();
+        if (now >= cachedYearUntil) {
+            Calendar calendar = Calendar.getInstance();
+            cachedYear = calendar.get(Calendar.YEAR);
+            cachedYearUntil = now + 60 * 60 * 1000L;
+        }
+        return cachedYear;
     }
 
 
     public static boolean isNotEmpty(String input) {
-        return input != null && !input.trim().isEmpty();
+        if (input == null) {
+            return false;
+        }
+        for (int i = 0, n = input.length(); i < n; i++) {
+            if (input.charAt(i) > ' ') {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static int validateMenuChoice(String input, int min, int max) {
@@ -101,7 +172,13 @@ public class Validator {
             return false;
         }
 
-        return genre.matches("^[A-Za-z_\\-\\s]+$");
+        for (int i = 0, n = genre.length(); i < n; i++) {
+            char c = genre.charAt(i);
+            if (!isAsciiLetter(c) && c != '_' && c != '-' && !isRegexSpace(c)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static boolean isValidPublisher(String publisher) {
@@ -109,7 +186,67 @@ public class Validator {
             return false;
         }
 
-        return publisher.matches("^[A-Za-z0-9_\\-\\s]+$");
+        for (int i = 0, n = publisher.length(); i < n; i++) {
+            char c = publisher.charAt(i);
+            if (!isAsciiLetter(c) && (c < '0' || c > '9') && c != '_' && c != '-' && !isRegexSpace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /** Same character set as the regex class {@code \s}. */
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Validates one record laid out as ISBN, Title, Author, Publisher, Year, Genre
+     * (see the FIELD_ constants). Returns a bitmask of ERR_ flags, 0 when the record is valid.
+     * Missing trailing fields are reported as errors.
+     */
+    public static int validateRecord(String[] record) {
+        int errors = 0;
+        if (!isValidISBN(field(record, FIELD_ISBN))) errors |= ERR_ISBN;
+        if (!isNotEmpty(field(record, FIELD_TITLE))) errors |= ERR_TITLE;
+        if (!isValidName(field(record, FIELD_AUTHOR))) errors |= ERR_AUTHOR;
+        if (!isValidPublisher(field(record, FIELD_PUBLISHER))) errors |= ERR_PUBLISHER;
+        if (!isValidYear(field(record, FIELD_YEAR))) errors |= ERR_YEAR;
+        if (!isValidGenre(field(record, FIELD_GENRE))) errors |= ERR_GENRE;
+        return errors;
+    }
+
+    private static String field(String[] record, int index) {
+        return record != null && index < record.length ? record[index] : null;
+    }
+
+    /**
+     * Validates many records in parallel. The result holds one error bitmask per record, in input order.
+     */
+    public static int[] validateBatch(String[][] records) {
+        int[] errors = new int[records.length];
+        IntStream.range(0, records.length)
+                .parallel()
+                .forEach(i -> errors[i] = validateRecord(records[i]));
+        return errors;
+    }
+
+    /**
+     * Turns an error bitmask into a comma separated list of field names, e.g. "isbn,year".
+     */
+    public static String describeErrors(int errors) {
+        StringBuilder sb = new StringBuilder();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if ((errors & (1 << field)) != 0) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(FIELD_NAMES[field]);
+            }
+        }
+        return sb.toString();
     }
 
     public static String sanitizeInput(String input) {